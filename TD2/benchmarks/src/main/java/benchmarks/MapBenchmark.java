@@ -0,0 +1,77 @@
+package benchmarks;
+
+/**
+ * Cost per input line of the mappers of NameCountByOrigin, NameCountByOriginCount and NameGenderProp.
+ *
+ * Each invocation runs the mapper (setup, map of every line, cleanup) over the same
+ * synthetic lines, so the score is in ns per line. Run with '-prof gc' to get the
+ * allocation rate (gc.alloc.rate.norm is in bytes per line).
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class MapBenchmark {
+
+    static final int LINES = 10000;
+
+    @Param({"NameCountByOrigin", "NameCountByOriginCount", "NameGenderProp"})
+    public String job;
+
+    @Param({"origins-1", "origins-3", "origins-10", "unknown", "long"})
+    public String dataset;
+
+    // namestats.inmapper.combine
+    @Param({"false", "true"})
+    public boolean inMapper;
+
+    private Mapper mapper;
+    private StubContexts.LinesReader reader;
+    private StubContexts.BlackholeWriter writer;
+    private Mapper.Context context;
+
+    @Setup
+    public void setup() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.setBoolean("namestats.inmapper.combine", inMapper);
+        // The in-mapper table is created by setup() at each invocation, a small one keeps it out of the score
+        conf.setInt("namestats.inmapper.max.bytes", 64 * 1024);
+
+        mapper = StubContexts.newInstance(job + "$Map", conf);
+        reader = new StubContexts.LinesReader(SyntheticLines.generate(dataset, LINES, 42));
+        writer = new StubContexts.BlackholeWriter();
+        context = StubContexts.mapContext(conf, reader, writer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void map(Blackhole blackhole) throws Exception {
+        writer.blackhole = blackhole;
+        reader.reset();
+        mapper.run(context);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+/**
+ * Cost per input record of the reducers of NameCountByOrigin, NameCountByOriginCount and NameGenderProp.
+ *
+ * The reduce input is the sorted and serialized output of the mapper of the same job
+ * over synthetic lines, as the shuffle would give it (without combiner). Each invocation
+ * deserializes, groups and reduces the same RECORDS records, so the score is in ns per record.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class ReduceBenchmark {
+
+    static final int RECORDS = 20000;
+
+    @Param({"NameCountByOrigin", "NameCountByOriginCount", "NameGenderProp"})
+    public String job;
+
+    @Param({"origins-3", "unknown", "long"})
+    public String dataset;
+
+    private Configuration conf;
+    private Reducer reducer;
+    private StubContexts.SortedRecords input;
+    private StubContexts.BlackholeWriter writer;
+
+    @Setup
+    public void setup() throws Exception {
+        conf = new Configuration(false);
+
+        // Map output of the job over enough lines, cut to RECORDS records and sorted
+        Mapper mapper = StubContexts.newInstance(job + "$Map", conf);
+        StubContexts.CollectingWriter collector = new StubContexts.CollectingWriter(conf, RECORDS);
+        long seed = 42;
+        while (!collector.isFull()) {
+            StubContexts.LinesReader lines = new StubContexts.LinesReader(SyntheticLines.generate(dataset, 1000, seed++));
+            mapper.run(StubContexts.mapContext(conf, lines, collector));
+        }
+        input = collector.sort();
+
+        reducer = StubContexts.newInstance(job + "$Reduce", conf);
+        writer = new StubContexts.BlackholeWriter();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void reduce(Blackhole blackhole) throws Exception {
+        writer.blackhole = blackhole;
+        reducer.run(StubContexts.reduceContext(conf, input, writer));
+    }
+}
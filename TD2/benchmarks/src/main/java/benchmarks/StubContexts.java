@@ -0,0 +1,293 @@
+package benchmarks;
+
+/**
+ * Map and reduce contexts running the TD2 classes without a cluster.
+ *
+ * The job classes are in the default package and cannot be used from here, so the
+ * benchmarks load them by name and drive them through the public Mapper.run() and
+ * Reducer.run(), with the same context implementations as Hadoop :
+ * - map input comes from an array of lines, map output goes to a Blackhole
+ * - reduce input is a sorted array of serialized records, reduce output goes to a Blackhole
+ *
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class StubContexts {
+
+    private static final TaskAttemptID MAP_ID = new TaskAttemptID(new TaskID("bench", 1, TaskType.MAP, 0), 0);
+    private static final TaskAttemptID REDUCE_ID = new TaskAttemptID(new TaskID("bench", 1, TaskType.REDUCE, 0), 0);
+
+    private StubContexts() {
+    }
+
+    // Instance of a TD2 class, for instance newInstance("NameCountByOrigin$Map", conf)
+    static <T> T newInstance(String className, Configuration conf) throws ClassNotFoundException {
+        return (T) ReflectionUtils.newInstance(Class.forName(className), conf);
+    }
+
+    static Mapper.Context mapContext(Configuration conf, LinesReader reader, RecordWriter writer) {
+        MapContextImpl context = new MapContextImpl(conf, MAP_ID, reader, writer, null, new Reporter(), null);
+        return new WrappedMapper().getMapContext(context);
+    }
+
+    static Reducer.Context reduceContext(Configuration conf, SortedRecords input, RecordWriter writer) throws IOException, InterruptedException {
+        input.reset();
+        ReduceContextImpl context = new ReduceContextImpl(conf, REDUCE_ID, input, new GenericCounter(), new GenericCounter(),
+                writer, null, new Reporter(), input.comparator, input.keyClass, input.valueClass);
+        return new WrappedReducer().getReducerContext(context);
+    }
+
+
+    // Map input : the same lines at each run
+    static class LinesReader extends RecordReader<LongWritable, Text> {
+
+        private final Text[] lines;
+        private final LongWritable key = new LongWritable();
+        private int next;
+        private long offset;
+
+        LinesReader(Text[] lines) {
+            this.lines = lines;
+        }
+
+        void reset() {
+            next = 0;
+            offset = 0;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            if (next == lines.length) {
+                return false;
+            }
+            key.set(offset);
+            offset += lines[next].getLength() + 1;
+            next++;
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return lines[next - 1];
+        }
+
+        @Override
+        public float getProgress() {
+            return (float) next / lines.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    // Output consumed by a Blackhole, so that the JIT cannot remove the work
+    static class BlackholeWriter extends RecordWriter {
+
+        Blackhole blackhole;
+
+        @Override
+        public void write(Object key, Object value) {
+            blackhole.consume(key);
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+    }
+
+
+    // Map output serialized like the shuffle does, then sorted as reduce input
+    static class CollectingWriter extends RecordWriter {
+
+        private final Configuration conf;
+        private final int maxRecords;
+        private final DataOutputBuffer buffer = new DataOutputBuffer();
+        private final List<byte[][]> records = new ArrayList<byte[][]>();
+        private Class keyClass;
+        private Class valueClass;
+        private Serializer keySerializer;
+        private Serializer valueSerializer;
+
+        CollectingWriter(Configuration conf, int maxRecords) {
+            this.conf = conf;
+            this.maxRecords = maxRecords;
+        }
+
+        boolean isFull() {
+            return records.size() == maxRecords;
+        }
+
+        // Records after the first maxRecords ones are dropped
+        @Override
+        public void write(Object key, Object value) throws IOException {
+            if (isFull()) {
+                return;
+            }
+            if (keySerializer == null) {
+                SerializationFactory factory = new SerializationFactory(conf);
+                keyClass = key.getClass();
+                valueClass = value.getClass();
+                keySerializer = factory.getSerializer(keyClass);
+                valueSerializer = factory.getSerializer(valueClass);
+                keySerializer.open(buffer);
+                valueSerializer.open(buffer);
+            }
+            buffer.reset();
+            keySerializer.serialize(key);
+            byte[] keyBytes = Arrays.copyOf(buffer.getData(), buffer.getLength());
+            buffer.reset();
+            valueSerializer.serialize(value);
+            byte[] valueBytes = Arrays.copyOf(buffer.getData(), buffer.getLength());
+            records.add(new byte[][] {keyBytes, valueBytes});
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+
+        SortedRecords sort() {
+            final RawComparator comparator = WritableComparator.get((Class<? extends WritableComparable>) keyClass);
+            Collections.sort(records, new Comparator<byte[][]>() {
+                public int compare(byte[][] a, byte[][] b) {
+                    return comparator.compare(a[0], 0, a[0].length, b[0], 0, b[0].length);
+                }
+            });
+            return new SortedRecords(records, comparator, keyClass, valueClass);
+        }
+    }
+
+
+    // Reduce input : sorted serialized records, replayed at each run
+    static class SortedRecords implements RawKeyValueIterator {
+
+        final RawComparator comparator;
+        final Class keyClass;
+        final Class valueClass;
+        private final List<byte[][]> records;
+        private final DataInputBuffer key = new DataInputBuffer();
+        private final DataInputBuffer value = new DataInputBuffer();
+        private final Progress progress = new Progress();
+        private int next;
+
+        SortedRecords(List<byte[][]> records, RawComparator comparator, Class keyClass, Class valueClass) {
+            this.records = records;
+            this.comparator = comparator;
+            this.keyClass = keyClass;
+            this.valueClass = valueClass;
+        }
+
+        int size() {
+            return records.size();
+        }
+
+        void reset() {
+            next = 0;
+        }
+
+        public DataInputBuffer getKey() {
+            return key;
+        }
+
+        public DataInputBuffer getValue() {
+            return value;
+        }
+
+        public boolean next() {
+            if (next == records.size()) {
+                return false;
+            }
+            byte[][] record = records.get(next++);
+            key.reset(record[0], record[0].length);
+            value.reset(record[1], record[1].length);
+            return true;
+        }
+
+        public void close() {
+        }
+
+        public Progress getProgress() {
+            return progress;
+        }
+    }
+
+
+    private static class Reporter extends StatusReporter {
+
+        private final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+/**
+ * Synthetic lines of the name file (name;genders;origins;frequency) for the benchmarks.
+ *
+ * Datasets :
+ * - origins-1, origins-3, origins-10 : well formed lines with exactly 1, 3 or 10 origins
+ * - unknown : 1 to 3 origins, with '?' origins, blank origin fields and empty tokens
+ * - long : long names and 10 to 30 origins separated by ", "
+ * Lines only depend on the dataset and the seed, so runs can be compared.
+ *
+ */
+
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+
+
+final class SyntheticLines {
+
+    static final String[] DATASETS = {"origins-1", "origins-3", "origins-10", "unknown", "long"};
+
+    private static final String[] ORIGINS = {
+            "english", "french", "german", "spanish", "italian", "arabic", "irish", "scottish",
+            "dutch", "greek mythology", "biblical", "hebrew", "latin", "norse", "russian", "polish",
+            "welsh", "portuguese", "turkish", "hungarian", "finnish", "swedish", "czech", "japanese"
+    };
+
+    private static final String[] GENDERS = {"f", "m", "m", "f", "f,m", "m,f"};
+
+    private SyntheticLines() {
+    }
+
+    static Text[] generate(String dataset, int count, long seed) {
+        Random random = new Random(seed);
+        Text[] lines = new Text[count];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            line.setLength(0);
+            boolean isLong = dataset.equals("long");
+            appendName(line, random, isLong ? 30 + random.nextInt(30) : 3 + random.nextInt(8));
+            line.append(';').append(GENDERS[random.nextInt(GENDERS.length)]).append(';');
+
+            if (dataset.equals("unknown")) {
+                appendUnknownOrigins(line, random);
+            } else {
+                int origins;
+                if (isLong) {
+                    origins = 10 + random.nextInt(21);
+                } else {
+                    origins = Integer.parseInt(dataset.substring(dataset.indexOf('-') + 1));
+                }
+                appendOrigins(line, random, origins, isLong ? ", " : ",");
+            }
+            line.append(';').append(random.nextInt(100)).append('.').append(random.nextInt(100));
+            lines[i] = new Text(line.toString());
+        }
+        return lines;
+    }
+
+    private static void appendName(StringBuilder line, Random random, int length) {
+        for (int i = 0; i < length; i++) {
+            line.append((char) ('a' + random.nextInt(26)));
+        }
+    }
+
+    private static void appendOrigins(StringBuilder line, Random random, int origins, String separator) {
+        for (int i = 0; i < origins; i++) {
+            if (i > 0) line.append(separator);
+            line.append(ORIGINS[random.nextInt(ORIGINS.length)]);
+        }
+    }
+
+    // '?' alone or among origins, blank field, empty tokens and spaces around tokens
+    private static void appendUnknownOrigins(StringBuilder line, Random random) {
+        int kind = random.nextInt(10);
+        if (kind < 3) {
+            line.append('?');
+        } else if (kind < 5) {
+            line.append(kind == 3 ? "" : " ");
+        } else if (kind < 7) {
+            appendOrigins(line, random, 1 + random.nextInt(3), ",");
+            line.append(kind == 5 ? ",?" : ",,");
+        } else {
+            appendOrigins(line, random, 1 + random.nextInt(3), " , ");
+        }
+    }
+}
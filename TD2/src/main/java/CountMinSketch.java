@@ -0,0 +1,121 @@
+/**
+ * Count-Min sketch : approximate frequencies of keys in a fixed memory (depth x width counters).
+ *
+ * The estimate of a key never underestimates its true count, and with probability
+ * at least 1 - delta it overestimates it by at most epsilon * N, where N is the total
+ * of all counts, epsilon = e / width and delta = e^-depth.
+ * Two sketches of the same width and depth are merged by adding their counters.
+ *
+ * Serialized form : width, depth (vints), total (vlong), then the counters (vlongs).
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public class CountMinSketch implements Writable {
+
+    private int width;
+    private int depth;
+    private long total;
+    private long[] counters;
+
+    public CountMinSketch() {
+    }
+
+    public CountMinSketch(int width, int depth) {
+        this.width    = width;
+        this.depth    = depth;
+        this.counters = new long[width * depth];
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // Relative error bound epsilon (an estimate exceeds the true count by at most epsilon * total)
+    public double getEpsilon() {
+        return Math.E / width;
+    }
+
+    // Probability that an estimate exceeds the bound
+    public double getDelta() {
+        return Math.exp(-depth);
+    }
+
+
+    public void add(byte[] bytes, int start, int length, long count) {
+        long hash = Hash64.hash(bytes, start, length);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + column(h1, h2, row)] += count;
+        }
+        total += count;
+    }
+
+
+    public long estimate(Text key) {
+        long hash = Hash64.hash(key.getBytes(), 0, key.getLength());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + column(h1, h2, row)]);
+        }
+        return estimate;
+    }
+
+
+    // Row hashes are derived from two halves of one 64 bits hash (Kirsch and Mitzenmacher)
+    private int column(int h1, int h2, int row) {
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+
+    public void merge(CountMinSketch other) throws IOException {
+        if (other.width != width || other.depth != depth) {
+            throw new IOException("Cannot merge count-min sketches of different sizes");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, width);
+        WritableUtils.writeVInt(out, depth);
+        WritableUtils.writeVLong(out, total);
+        for (long counter : counters) {
+            WritableUtils.writeVLong(out, counter);
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        width = WritableUtils.readVInt(in);
+        depth = WritableUtils.readVInt(in);
+        total = WritableUtils.readVLong(in);
+        if (counters == null || counters.length != width * depth) {
+            counters = new long[width * depth];
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = WritableUtils.readVLong(in);
+        }
+    }
+}
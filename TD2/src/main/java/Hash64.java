@@ -0,0 +1,64 @@
+/**
+ * 64 bits hash of a slice of bytes (MurmurHash64A by Austin Appleby).
+ *
+ * Used by the sketches and by the name fingerprints : it is computed
+ * directly on the bytes of the line, without creating a String.
+ *
+ */
+
+
+public final class Hash64 {
+
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    private Hash64() {
+    }
+
+    public static long hash(byte[] data, int offset, int length) {
+        return hash(data, offset, length, 0x9747b28cL);
+    }
+
+    // The cases of the tail fall through on purpose, as in MurmurHash64A
+    @SuppressWarnings("fallthrough")
+    public static long hash(byte[] data, int offset, int length, long seed) {
+        long h = seed ^ (length * M);
+
+        // Body : 8 bytes at a time, little endian
+        int blocks = length >>> 3;
+        for (int i = 0; i < blocks; i++) {
+            int index = offset + (i << 3);
+            long k = (data[index] & 0xffL)
+                    | ((data[index + 1] & 0xffL) << 8)
+                    | ((data[index + 2] & 0xffL) << 16)
+                    | ((data[index + 3] & 0xffL) << 24)
+                    | ((data[index + 4] & 0xffL) << 32)
+                    | ((data[index + 5] & 0xffL) << 40)
+                    | ((data[index + 6] & 0xffL) << 48)
+                    | ((data[index + 7] & 0xffL) << 56);
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+            h ^= k;
+            h *= M;
+        }
+
+        // Tail : the remaining 0 to 7 bytes
+        int tail = offset + (blocks << 3);
+        switch (length & 7) {
+            case 7: h ^= (data[tail + 6] & 0xffL) << 48;
+            case 6: h ^= (data[tail + 5] & 0xffL) << 40;
+            case 5: h ^= (data[tail + 4] & 0xffL) << 32;
+            case 4: h ^= (data[tail + 3] & 0xffL) << 24;
+            case 3: h ^= (data[tail + 2] & 0xffL) << 16;
+            case 2: h ^= (data[tail + 1] & 0xffL) << 8;
+            case 1: h ^= (data[tail] & 0xffL);
+                    h *= M;
+        }
+
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Salting of hot keys for NameCountByOrigin, such as the unknown origin '?'.
+ *
+ * A key much larger than the others (in our data, '?' is close to half of the origins)
+ * sends a large share of the shuffle to a single reduce task, which sets the duration
+ * of the job. The mappers write each hot key as one of N salted sub-keys, in turn
+ * (origin, separator byte 0, bucket number in decimal), and SaltedPartitioner sends
+ * the N sub-keys to N consecutive reduce tasks. Each reduce task writes the partial
+ * count of its sub-keys to the named output salted, and fold() adds them up into
+ * one count per hot key once the job is done (a few lines per hot key).
+ *
+ * Hot keys are the keys of namestats.salt.keys, plus with namestats.salt.detect=true
+ * the origins sampled (see NameOriginSampler) more often than 1 / number of reduce tasks.
+ * Keys that are not hot are partitioned as with HashPartitioner.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+
+public class HotKeySalting {
+
+    // Named output of the partial counts of the salted keys
+    public static final String SALTED_OUTPUT = "salted";
+
+    // Origins never contain this byte
+    private static final byte SEPARATOR = 0;
+
+    private final HashSet<Text> hotKeys = new HashSet<Text>();
+    private final int buckets;
+    private final Text salted = new Text();
+    private final byte[][] suffixes;
+    private int next;
+
+    // Salting of a map task, the first bucket depends on the task so that all tasks do not start with the same one
+    private HotKeySalting(String[] keys, int buckets, int task) {
+        for (String key : keys) {
+            hotKeys.add(new Text(key));
+        }
+        this.buckets  = buckets;
+        this.next     = task % buckets;
+        this.suffixes = new byte[buckets][];
+        for (int i = 0; i < buckets; i++) {
+            byte[] digits = Integer.toString(i).getBytes();
+            suffixes[i] = new byte[digits.length + 1];
+            suffixes[i][0] = SEPARATOR;
+            System.arraycopy(digits, 0, suffixes[i], 1, digits.length);
+        }
+    }
+
+    // Salting of the map task, null when there is no hot key or when keys are in total order
+    // (the reduce tasks of a total order job do not write the salted output)
+    public static HotKeySalting forTask(Configuration conf, int task) {
+        String[] keys = conf.getTrimmedStrings(NameStatsConfig.SALT_KEYS);
+        if (keys.length == 0 || NameStatsConfig.totalOrder(conf)) {
+            return null;
+        }
+        return new HotKeySalting(keys, NameStatsConfig.saltBuckets(conf), task);
+    }
+
+
+    // The key itself, or the next salted sub-key for a hot key (the returned Text is reused)
+    public Text salt(Text key) {
+        if (!hotKeys.contains(key)) {
+            return key;
+        }
+        byte[] suffix = suffixes[next];
+        next = (next + 1) % buckets;
+        salted.set(key);
+        salted.append(suffix, 0, suffix.length);
+        return salted;
+    }
+
+
+    private static int separator(Text key) {
+        byte[] bytes = key.getBytes();
+        for (int i = 0; i < key.getLength(); i++) {
+            if (bytes[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // If key is a salted sub-key, sets origin to its hot key and returns true
+    public static boolean unsalt(Text key, Text origin) {
+        int separator = separator(key);
+        if (separator < 0) {
+            return false;
+        }
+        origin.set(key.getBytes(), 0, separator);
+        return true;
+    }
+
+
+    // Sub-keys of a hot key go to consecutive reduce tasks starting at the partition of the hot key
+    public static class SaltedPartitioner extends Partitioner<Text, Object> {
+
+        public int getPartition(Text key, Object value, int partitions) {
+            int separator = separator(key);
+            if (separator < 0) {
+                return (key.hashCode() & Integer.MAX_VALUE) % partitions;
+            }
+            // Same hash as Text.hashCode() on the hot key alone
+            int hash = WritableComparator.hashBytes(key.getBytes(), separator);
+            int bucket = 0;
+            byte[] bytes = key.getBytes();
+            for (int i = separator + 1; i < key.getLength(); i++) {
+                bucket = bucket * 10 + (bytes[i] - '0');
+            }
+            return ((hash & Integer.MAX_VALUE) % partitions + bucket) % partitions;
+        }
+    }
+
+
+    // Driver side : adds the sampled hot keys to namestats.salt.keys, then sets the partitioner and the
+    // named output when there is a hot key. Returns the hot keys.
+    public static String[] configure(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        Configuration conf = job.getConfiguration();
+        TreeSet<String> keys = new TreeSet<String>();
+        for (String key : conf.getTrimmedStrings(NameStatsConfig.SALT_KEYS)) {
+            keys.add(key);
+        }
+
+        if (NameStatsConfig.saltDetect(conf)) {
+            List<Text> samples = NameOriginSampler.sample(job);
+            HashMap<Text, long[]> counts = new HashMap<Text, long[]>();
+            for (Text origin : samples) {
+                long[] count = counts.get(origin);
+                if (count == null) {
+                    counts.put(origin, new long[] {1});
+                } else {
+                    count[0]++;
+                }
+            }
+            // Hot : more than the share of one reduce task
+            for (Map.Entry<Text, long[]> entry : counts.entrySet()) {
+                if (entry.getValue()[0] * job.getNumReduceTasks() > samples.size()) {
+                    keys.add(entry.getKey().toString());
+                }
+            }
+        }
+
+        String[] hot = keys.toArray(new String[keys.size()]);
+        conf.setStrings(NameStatsConfig.SALT_KEYS, hot);
+        if (hot.length > 0) {
+            job.setPartitionerClass(SaltedPartitioner.class);
+            MultipleOutputs.addNamedOutput(job, SALTED_OUTPUT, TextOutputFormat.class, Text.class, IntWritable.class);
+        }
+        return hot;
+    }
+
+
+    // Driver side, after the job : adds up the partial counts of output/salted-r-xxxxx into the
+    // part file following the ones of the reduce tasks, then removes them
+    public static void fold(Configuration conf, Path output, int reduces) throws IOException {
+        FileSystem fs = output.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(new Path(output, SALTED_OUTPUT + "-r-*"));
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        TreeMap<String, Long> counts = new TreeMap<String, Long>();
+        for (FileStatus file : files) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(file.getPath()), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.lastIndexOf('\t');
+                    String key = line.substring(0, tab);
+                    long count = Long.parseLong(line.substring(tab + 1));
+                    Long total = counts.get(key);
+                    counts.put(key, total == null ? count : total + count);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        Path folded = new Path(output, String.format("part-r-%05d", reduces));
+        Writer writer = new OutputStreamWriter(fs.create(folded, false), "UTF-8");
+        try {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        for (FileStatus file : files) {
+            fs.delete(file.getPath(), false);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * HyperLogLog sketch : approximate number of distinct keys in 2^precision bytes.
+ *
+ * The relative standard error of the estimate is 1.04 / sqrt(2^precision),
+ * for instance 0.8% with the default precision of 14 (16 KB).
+ * Two sketches of the same precision are merged by keeping the maximum of each register.
+ *
+ * Serialized form : precision (vint) followed by the 2^precision registers (bytes).
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public class HyperLogLog implements Writable {
+
+    private int precision;
+    private byte[] registers;
+
+    public HyperLogLog() {
+    }
+
+    public HyperLogLog(int precision) {
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    // Relative standard error of estimate()
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+
+    // Add a key given by its 64 bits hash (see Hash64)
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Position of the first 1 bit after the index bits
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Small range correction : linear counting
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+
+    public void merge(HyperLogLog other) throws IOException {
+        if (other.precision != precision) {
+            throw new IOException("Cannot merge HyperLogLog sketches of different precisions");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, precision);
+        out.write(registers);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        precision = WritableUtils.readVInt(in);
+        if (registers == null || registers.length != 1 << precision) {
+            registers = new byte[1 << precision];
+        }
+        in.readFully(registers);
+    }
+}
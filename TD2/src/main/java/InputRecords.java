@@ -0,0 +1,96 @@
+/**
+ * Bookkeeping of the input lines of a mapper : counters and malformed lines.
+ *
+ * A line with a missing field is not an error of the task any more : the mapper skips it,
+ * counts it and writes it (offset, line) to the named output badrecords, that is
+ * output/path/badrecords-m-xxxxx. The driver has to declare it with addNamedOutput().
+ * Counts are kept in fields and added to the counters of the task in close(),
+ * so counting a line or a token costs an increment.
+ *
+ * Rows of the column files have no line to write : a row without the field of the job is
+ * only counted (its line is kept in the column file by NameColumnConverter).
+ *
+ * Usage :
+ *  setup   : records = new InputRecords(context);
+ *  map     : if (!parser.parse(value)) { records.malformed(key, value); return; } records.parsed();
+ *  cleanup : records.close();
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+
+public class InputRecords {
+
+    // Named output of the malformed lines
+    public static final String BAD_RECORDS_OUTPUT = "badrecords";
+
+    private final TaskInputOutputContext<?, ?, ?, ?> context;
+    private MultipleOutputs<?, ?> outputs;
+    private long parsed;
+    private long malformed;
+    private long unknownOrigins;
+    private long tokens;
+
+    public InputRecords(TaskInputOutputContext<?, ?, ?, ?> context) {
+        this.context = context;
+    }
+
+    public static void addNamedOutput(Job job) {
+        MultipleOutputs.addNamedOutput(job, BAD_RECORDS_OUTPUT, TextOutputFormat.class, LongWritable.class, Text.class);
+    }
+
+
+    public void parsed() {
+        parsed++;
+    }
+
+    public void unknownOrigin() {
+        unknownOrigins++;
+    }
+
+    public void unknownOrigins(int count) {
+        unknownOrigins += count;
+    }
+
+    public void tokenEmitted() {
+        tokens++;
+    }
+
+    // The line is skipped : it is counted and written to the bad records
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void malformed(LongWritable offset, Text line) throws IOException, InterruptedException {
+        malformed++;
+        // Created on the first malformed line, so that well formed inputs have no badrecords files
+        if (outputs == null) {
+            outputs = new MultipleOutputs(context);
+        }
+        ((MultipleOutputs) outputs).write(BAD_RECORDS_OUTPUT, offset, line);
+    }
+
+
+    // A row of a column file without the field of the job is skipped and counted
+    public void malformed() {
+        malformed++;
+    }
+
+
+    public void close() throws IOException, InterruptedException {
+        context.getCounter(NameStatsCounter.RECORDS_PARSED).increment(parsed);
+        context.getCounter(NameStatsCounter.RECORDS_MALFORMED).increment(malformed);
+        context.getCounter(NameStatsCounter.UNKNOWN_ORIGINS).increment(unknownOrigins);
+        context.getCounter(NameStatsCounter.TOKENS_EMITTED).increment(tokens);
+        parsed = malformed = unknownOrigins = tokens = 0;
+        if (outputs != null) {
+            outputs.close();
+            outputs = null;
+        }
+    }
+}
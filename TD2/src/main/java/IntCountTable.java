@@ -0,0 +1,96 @@
+/**
+ * Open addressing hash table counting occurrences of int keys.
+ *
+ * It is used by the mappers for in-mapper combining : instead of writing
+ * one (key, 1) pair per record, the mapper adds 1 to the key in the table
+ * and the table is flushed to the context when it is full and in cleanup().
+ * Keys and counts are kept in primitive arrays, so no object is created per record.
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+
+public class IntCountTable {
+
+    // Bytes used by one slot : key, count and used flag
+    private static final int SLOT_BYTES = 4 + 4 + 1;
+
+    private final int[] keys;
+    private final int[] counts;
+    private final boolean[] used;
+    private final int mask;
+    private final int maxEntries;
+    private int size;
+
+    // Reused writables for flushing
+    private final IntWritable outKey = new IntWritable();
+    private final IntWritable outValue = new IntWritable();
+
+    // The table never uses more than maxBytes (at least 16 slots)
+    public IntCountTable(int maxBytes) {
+        int capacity = 16;
+        while (capacity * 2L * SLOT_BYTES <= maxBytes && capacity < (1 << 30)) {
+            capacity *= 2;
+        }
+        this.keys       = new int[capacity];
+        this.counts     = new int[capacity];
+        this.used       = new boolean[capacity];
+        this.mask       = capacity - 1;
+        // Load factor of 0.75 keeps probe sequences short
+        this.maxEntries = capacity - (capacity >> 2);
+        this.size       = 0;
+    }
+
+
+    // Add delta to the count of key
+    public void add(int key, int delta) {
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot]   = true;
+        keys[slot]   = key;
+        counts[slot] = delta;
+        size += 1;
+    }
+
+
+    // The caller has to flush the table when it is full
+    public boolean isFull() {
+        return size >= maxEntries;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    // Write every (key, count) pair to the context and empty the table
+    public void flush(TaskInputOutputContext<?, ?, IntWritable, IntWritable> context) throws IOException, InterruptedException {
+        for (int slot = 0; slot < used.length; slot++) {
+            if (used[slot]) {
+                outKey.set(keys[slot]);
+                outValue.set(counts[slot]);
+                context.write(outKey, outValue);
+                used[slot] = false;
+            }
+        }
+        size = 0;
+    }
+
+
+    // Spread the bits of the key so that close keys do not collide
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,808 @@
+/**
+ * Embedded engine running a configured Job inside the current JVM, without a cluster.
+ *
+ * For small and medium inputs, submitting a job and starting task JVMs costs more
+ * than the computation itself. This engine runs the same Mapper, Combiner, Partitioner
+ * and Reducer classes as the cluster, with the same contexts :
+ * - local text files are cut into splits at line boundaries and memory-mapped,
+ *   each split is read like TextInputFormat (key = offset of the line, value = line)
+ * - map tasks run in parallel on a fork-join pool, their output is serialized,
+ *   partitioned and sorted in memory with the sort comparator of the job
+ * - the combiner (if any) runs on each sorted partition of a map task
+ * - each reduce task merges the sorted partitions of all map tasks and groups them
+ *   with the grouping comparator of the job
+ * - output goes through the OutputFormat and OutputCommitter of the job, so output files
+ *   (part-r-xxxxx, named outputs, _SUCCESS) are the same as the ones of a cluster run
+ *
+ * Plain local text files (TextInputFormat) go through the memory-mapped reader above;
+ * other input formats, and text input that it would not read like TextInputFormat (glob patterns,
+ * compressed or remote files, see computeSplits()), are used as they are, with their own splits
+ * and record readers. All map output is kept in memory.
+ * Drivers use it when namestats.engine=embedded (see runJob()).
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.hadoop.util.ReflectionUtils;
+
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class LocalEngine {
+
+    // Files ignored by FileInputFormat are ignored here too
+    private static final PathFilter HIDDEN_FILTER = new PathFilter() {
+        public boolean accept(Path path) {
+            String name = path.getName();
+            return !name.startsWith("_") && !name.startsWith(".");
+        }
+    };
+
+    // Record delimiter of TextInputFormat, lines end with '\n', '\r' or "\r\n" when it is not set
+    private static final String RECORD_DELIMITER = "textinputformat.record.delimiter";
+
+    private static int jobCounter = 0;
+
+    private final Job job;
+    private final Configuration conf;
+    private final JobID jobId;
+    private final int threads;
+    private final long splitBytes;
+    private final int reduces;
+    private final Counters counters = new Counters();
+
+    // Sorted map outputs : runs[map task][partition]
+    private Run[][] runs;
+
+
+    public LocalEngine(Job job) {
+        this.job        = job;
+        this.conf       = job.getConfiguration();
+        this.jobId      = new JobID("embedded", nextJobNumber());
+        this.threads    = NameStatsConfig.embeddedThreads(conf);
+        // A split is memory-mapped in one buffer
+        this.splitBytes = Math.min(NameStatsConfig.embeddedSplitBytes(conf), Integer.MAX_VALUE);
+        this.reduces    = job.getNumReduceTasks();
+    }
+
+
+    // Run the job with the engine chosen by namestats.engine (cluster by default)
+    public static boolean runJob(Job job) throws Exception {
+        return runJobForCounters(job) != null;
+    }
+
+
+    // Same as runJob(), returns the counters of the job, or null if it failed
+    public static Counters runJobForCounters(Job job) throws Exception {
+        if (NameStatsConfig.embeddedEngine(job.getConfiguration())) {
+            LocalEngine engine = new LocalEngine(job);
+            engine.run();
+            return engine.getCounters();
+        }
+        return job.waitForCompletion(true) ? job.getCounters() : null;
+    }
+
+
+    private static synchronized int nextJobNumber() {
+        return ++jobCounter;
+    }
+
+
+    // Counters of all tasks, available once run() returned
+    public Counters getCounters() {
+        return counters;
+    }
+
+
+    public boolean run() throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        // Same checks and commit protocol as a cluster run
+        JobContext jobContext = new JobContextImpl(conf, jobId);
+        OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), conf);
+        outputFormat.checkOutputSpecs(jobContext);
+        TaskAttemptContext setupContext = new TaskAttemptContextImpl(conf, attemptId(TaskType.JOB_SETUP, 0));
+        OutputCommitter committer = outputFormat.getOutputCommitter(setupContext);
+        committer.setupJob(jobContext);
+
+        // Plain local text is read with the engine's own reader, other input with the input format of the job
+        InputFormat inputFormat = null;
+        List<InputSplit> splits = null;
+        if (job.getInputFormatClass() == TextInputFormat.class) {
+            splits = computeSplits();
+        }
+        if (splits == null) {
+            inputFormat = ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+            splits = inputFormat.getSplits(jobContext);
+        }
+        runs = new Run[splits.size()][];
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Map phase
+            List<ForkJoinTask<?>> maps = new ArrayList<ForkJoinTask<?>>();
+            for (int i = 0; i < splits.size(); i++) {
+                maps.add(pool.submit(new MapTask(i, splits.get(i), inputFormat)));
+            }
+            join(maps);
+
+            // Reduce phase (in memory merge of the sorted map outputs)
+            List<ForkJoinTask<?>> reduceTasks = new ArrayList<ForkJoinTask<?>>();
+            for (int partition = 0; partition < reduces; partition++) {
+                reduceTasks.add(pool.submit(new ReduceTask(partition)));
+            }
+            join(reduceTasks);
+
+            committer.commitJob(jobContext);
+        } catch (Exception e) {
+            committer.abortJob(jobContext, JobStatus.State.FAILED);
+            throw e;
+        } finally {
+            pool.shutdown();
+            runs = null;
+        }
+
+        System.out.printf("Embedded job '%s' : %d map tasks, %d reduce tasks, %d ms\n",
+                job.getJobName(), splits.size(), reduces, System.currentTimeMillis() - startTime);
+        // Same counter report as a cluster job
+        System.out.println(counters);
+        return true;
+    }
+
+
+    // Wait for the tasks and rethrow the first failure
+    private static void join(List<ForkJoinTask<?>> tasks) throws Exception {
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+
+    private TaskAttemptID attemptId(TaskType type, int index) {
+        return new TaskAttemptID(new TaskID(jobId, type, index), 0);
+    }
+
+
+    // Cut input files into splits of about splitBytes ending at a line boundary, or null when the input
+    // is not only plain local text files listed the same way as FileInputFormat (glob patterns, directories
+    // in an input directory, compressed or remote files, record delimiter, path filter or recursive listing) :
+    // TextInputFormat reads it then
+    private List<InputSplit> computeSplits() throws IOException {
+        if (conf.get(RECORD_DELIMITER) != null || conf.get(FileInputFormat.PATHFILTER_CLASS) != null
+                || conf.getBoolean(FileInputFormat.INPUT_DIR_RECURSIVE, false)) {
+            return null;
+        }
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        List<InputSplit> splits = new ArrayList<InputSplit>();
+        for (Path input : FileInputFormat.getInputPaths(job)) {
+            if (new GlobPattern(input.toString()).hasWildcard()) {
+                return null;
+            }
+            FileSystem fs = input.getFileSystem(conf);
+            for (FileStatus status : fs.listStatus(input, HIDDEN_FILTER)) {
+                Path path = fs.makeQualified(status.getPath());
+                if (status.isDirectory() || !"file".equals(path.toUri().getScheme()) || codecs.getCodec(path) != null) {
+                    return null;
+                }
+                File file = new File(path.toUri().getPath());
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    FileChannel channel = raf.getChannel();
+                    long length = channel.size();
+                    long start = 0;
+                    while (start < length) {
+                        long end = Math.min(start + splitBytes, length);
+                        if (end < length) {
+                            end = nextLineStart(channel, end, length);
+                        }
+                        // A line longer than a buffer
+                        if (end - start > Integer.MAX_VALUE) {
+                            return null;
+                        }
+                        splits.add(new FileSplit(path, start, end - start, new String[0]));
+                        start = end;
+                    }
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+        return splits;
+    }
+
+
+    // Position following the first '\n' at or after position
+    private static long nextLineStart(FileChannel channel, long position, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < length) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return length;
+    }
+
+
+    private class MapTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final InputSplit split;
+        private final InputFormat inputFormat;
+
+        // inputFormat is null for text input, read by MappedLineReader
+        MapTask(int index, InputSplit split, InputFormat inputFormat) {
+            this.index = index;
+            this.split = split;
+            this.inputFormat = inputFormat;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                runMap();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void runMap() throws Exception {
+            // Each task has its own copy of the configuration, like on a cluster
+            Configuration taskConf = new Configuration(conf);
+            TaskAttemptID id = attemptId(TaskType.MAP, index);
+            TaskReporter reporter = new TaskReporter();
+
+            TaskAttemptContext taskContext = new TaskAttemptContextImpl(taskConf, id, reporter);
+            Counter inputRecords = reporter.getCounter(TaskCounter.MAP_INPUT_RECORDS);
+            RecordReader reader;
+            if (inputFormat == null) {
+                reader = new MappedLineReader((FileSplit) split, inputRecords);
+            } else {
+                reader = new CountingReader(inputFormat.createRecordReader(split, taskContext), inputRecords);
+                reader.initialize(split, taskContext);
+            }
+            RecordWriter writer;
+            MapOutputCollector collector = null;
+
+            // Map tasks may write side files (named outputs), they are committed like on a cluster
+            OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), taskConf);
+            OutputCommitter committer = outputFormat.getOutputCommitter(taskContext);
+            committer.setupTask(taskContext);
+
+            // Map only job : map output goes straight to the output format
+            if (reduces == 0) {
+                writer = outputFormat.getRecordWriter(taskContext);
+            } else {
+                collector = new MapOutputCollector(taskConf, reporter);
+                writer = collector;
+            }
+
+            try {
+                Mapper mapper = ReflectionUtils.newInstance(job.getMapperClass(), taskConf);
+                MapContextImpl mapContext = new MapContextImpl(taskConf, id, reader, writer, committer, reporter, split);
+                mapper.run(new WrappedMapper().getMapContext(mapContext));
+            } finally {
+                reader.close();
+                writer.close(taskContext);
+            }
+
+            if (collector != null) {
+                runs[index] = collector.sortAndCombine(taskConf, id);
+            }
+            if (committer.needsTaskCommit(taskContext)) {
+                committer.commitTask(taskContext);
+            }
+            reporter.mergeInto(counters);
+        }
+    }
+
+
+    private class ReduceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int partition;
+
+        ReduceTask(int partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                runReduce();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void runReduce() throws Exception {
+            Configuration taskConf = new Configuration(conf);
+            TaskAttemptID id = attemptId(TaskType.REDUCE, partition);
+            TaskReporter reporter = new TaskReporter();
+
+            // Sorted outputs of every map task for this partition
+            List<Run> inputs = new ArrayList<Run>();
+            long shuffleBytes = 0;
+            for (Run[] mapRuns : runs) {
+                inputs.add(mapRuns[partition]);
+                shuffleBytes += mapRuns[partition].data.getLength();
+            }
+            reporter.getCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).increment(shuffleBytes);
+            RawComparator comparator = (RawComparator) job.getSortComparator();
+            MergeIterator merge = new MergeIterator(inputs, comparator);
+
+            TaskAttemptContext taskContext = new TaskAttemptContextImpl(taskConf, id, reporter);
+            OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), taskConf);
+            OutputCommitter committer = outputFormat.getOutputCommitter(taskContext);
+            committer.setupTask(taskContext);
+            RecordWriter writer = outputFormat.getRecordWriter(taskContext);
+
+            try {
+                Reducer reducer = ReflectionUtils.newInstance(job.getReducerClass(), taskConf);
+                ReduceContextImpl reduceContext = new ReduceContextImpl(taskConf, id, merge,
+                        reporter.getCounter(TaskCounter.REDUCE_INPUT_GROUPS),
+                        reporter.getCounter(TaskCounter.REDUCE_INPUT_RECORDS),
+                        writer, committer, reporter, job.getGroupingComparator(),
+                        job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+                reducer.run(new WrappedReducer().getReducerContext(reduceContext));
+            } finally {
+                writer.close(taskContext);
+            }
+
+            if (committer.needsTaskCommit(taskContext)) {
+                committer.commitTask(taskContext);
+            }
+            reporter.mergeInto(counters);
+        }
+    }
+
+
+    // Reads the lines of a memory-mapped split like TextInputFormat ('\n', '\r' or "\r\n" ends a line)
+    private static class MappedLineReader extends RecordReader<LongWritable, Text> {
+
+        private final long start;
+        private final MappedByteBuffer buffer;
+        private final RandomAccessFile file;
+        private final Counter inputRecords;
+        private final LongWritable key = new LongWritable();
+        private final Text value = new Text();
+        private byte[] line = new byte[256];
+
+        MappedLineReader(FileSplit split, Counter inputRecords) throws IOException {
+            this.start = split.getStart();
+            this.file  = new RandomAccessFile(new File(split.getPath().toUri().getPath()), "r");
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, split.getStart(), split.getLength());
+            this.inputRecords = inputRecords;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            int lineStart = buffer.position();
+            int limit = buffer.limit();
+            if (lineStart >= limit) {
+                return false;
+            }
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            int length = lineEnd - lineStart;
+            if (length > line.length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            buffer.get(line, 0, length);
+
+            // Skip the line terminator
+            if (lineEnd < limit) {
+                byte terminator = buffer.get();
+                if (terminator == '\r' && buffer.position() < limit && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+            }
+            key.set(start + lineStart);
+            value.set(line, 0, length);
+            inputRecords.increment(1);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return buffer.limit() == 0 ? 1.0f : (float) buffer.position() / buffer.limit();
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+
+    // Record reader of another input format, counting the records it reads
+    private static class CountingReader extends RecordReader {
+
+        private final RecordReader reader;
+        private final Counter inputRecords;
+
+        CountingReader(RecordReader reader, Counter inputRecords) {
+            this.reader = reader;
+            this.inputRecords = inputRecords;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            reader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            if (reader.nextKeyValue()) {
+                inputRecords.increment(1);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Object getCurrentKey() throws IOException, InterruptedException {
+            return reader.getCurrentKey();
+        }
+
+        @Override
+        public Object getCurrentValue() throws IOException, InterruptedException {
+            return reader.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return reader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+
+    // Serializes map output records into one run per partition
+    private class MapOutputCollector extends RecordWriter {
+
+        private final Partitioner partitioner;
+        private final Run[] partitions;
+        private final DataOutputBuffer record = new DataOutputBuffer();
+        private final Serializer keySerializer;
+        private final Serializer valueSerializer;
+        private final TaskReporter reporter;
+        private final Counter outputRecords;
+        private final Counter outputBytes;
+
+        MapOutputCollector(Configuration taskConf, TaskReporter reporter) throws Exception {
+            this.partitioner = ReflectionUtils.newInstance(job.getPartitionerClass(), taskConf);
+            RawComparator comparator = (RawComparator) job.getSortComparator();
+            this.partitions = new Run[reduces];
+            for (int i = 0; i < reduces; i++) {
+                partitions[i] = new Run(comparator);
+            }
+            SerializationFactory factory = new SerializationFactory(taskConf);
+            this.keySerializer   = factory.getSerializer(job.getMapOutputKeyClass());
+            this.valueSerializer = factory.getSerializer(job.getMapOutputValueClass());
+            keySerializer.open(record);
+            valueSerializer.open(record);
+            this.reporter      = reporter;
+            this.outputRecords = reporter.getCounter(TaskCounter.MAP_OUTPUT_RECORDS);
+            this.outputBytes   = reporter.getCounter(TaskCounter.MAP_OUTPUT_BYTES);
+        }
+
+        @Override
+        public void write(Object key, Object value) throws IOException {
+            int partition = reduces == 1 ? 0 : partitioner.getPartition(key, value, reduces);
+            record.reset();
+            keySerializer.serialize(key);
+            int keyLength = record.getLength();
+            valueSerializer.serialize(value);
+            partitions[partition].append(record.getData(), keyLength, record.getLength());
+            outputRecords.increment(1);
+            outputBytes.increment(record.getLength());
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+
+        // Sort every partition, then run the combiner on it if the job has one
+        Run[] sortAndCombine(Configuration taskConf, TaskAttemptID id) throws Exception {
+            Class<? extends Reducer> combinerClass = job.getCombinerClass();
+            for (int i = 0; i < partitions.length; i++) {
+                partitions[i].sort();
+                if (combinerClass != null && partitions[i].count > 0) {
+                    partitions[i] = combine(combinerClass, partitions[i], taskConf, id);
+                }
+            }
+            return partitions;
+        }
+
+        private Run combine(Class<? extends Reducer> combinerClass, Run input, Configuration taskConf, TaskAttemptID id) throws Exception {
+            final Run output = new Run(input.comparator);
+            final Counter combineOutput = reporter.getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS);
+            RecordWriter combineWriter = new RecordWriter() {
+                @Override
+                public void write(Object key, Object value) throws IOException {
+                    record.reset();
+                    keySerializer.serialize(key);
+                    int keyLength = record.getLength();
+                    valueSerializer.serialize(value);
+                    output.append(record.getData(), keyLength, record.getLength());
+                    combineOutput.increment(1);
+                }
+
+                @Override
+                public void close(TaskAttemptContext context) {
+                }
+            };
+
+            List<Run> single = new ArrayList<Run>();
+            single.add(input);
+            Reducer combiner = ReflectionUtils.newInstance(combinerClass, taskConf);
+            ReduceContextImpl combineContext = new ReduceContextImpl(taskConf, id,
+                    new MergeIterator(single, input.comparator), new GenericCounter(),
+                    reporter.getCounter(TaskCounter.COMBINE_INPUT_RECORDS), combineWriter, null, reporter,
+                    job.getCombinerKeyGroupingComparator(), job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+            combiner.run(new WrappedReducer().getReducerContext(combineContext));
+            output.sort();
+            return output;
+        }
+    }
+
+
+    // Serialized records of one partition : bytes and (key start, key length, value length) per record
+    private static class Run implements IndexedSortable {
+
+        private final RawComparator comparator;
+        private final DataOutputBuffer data = new DataOutputBuffer();
+        private int[] meta = new int[3 * 64];
+        private int count;
+
+        Run(RawComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        void append(byte[] record, int keyLength, int length) {
+            if (3 * count + 3 > meta.length) {
+                int[] newMeta = new int[meta.length * 2];
+                System.arraycopy(meta, 0, newMeta, 0, meta.length);
+                meta = newMeta;
+            }
+            meta[3 * count]     = data.getLength();
+            meta[3 * count + 1] = keyLength;
+            meta[3 * count + 2] = length - keyLength;
+            try {
+                data.write(record, 0, length);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            count++;
+        }
+
+        void sort() {
+            new QuickSort().sort(this, 0, count);
+        }
+
+        public int compare(int i, int j) {
+            byte[] bytes = data.getData();
+            return comparator.compare(bytes, meta[3 * i], meta[3 * i + 1], bytes, meta[3 * j], meta[3 * j + 1]);
+        }
+
+        public void swap(int i, int j) {
+            for (int k = 0; k < 3; k++) {
+                int tmp = meta[3 * i + k];
+                meta[3 * i + k] = meta[3 * j + k];
+                meta[3 * j + k] = tmp;
+            }
+        }
+    }
+
+
+    // Position in a sorted run
+    private static class RunCursor {
+        final Run run;
+        int record;
+
+        RunCursor(Run run) {
+            this.run = run;
+        }
+
+        int keyStart() {
+            return run.meta[3 * record];
+        }
+
+        int keyLength() {
+            return run.meta[3 * record + 1];
+        }
+
+        int valueLength() {
+            return run.meta[3 * record + 2];
+        }
+    }
+
+
+    // Merges sorted runs into one sorted stream of raw records (the in memory shuffle)
+    private static class MergeIterator implements RawKeyValueIterator {
+
+        private final PriorityQueue<RunCursor> queue;
+        private final DataInputBuffer key = new DataInputBuffer();
+        private final DataInputBuffer value = new DataInputBuffer();
+        private final Progress progress = new Progress();
+        private RunCursor current;
+
+        MergeIterator(List<Run> runs, final RawComparator comparator) {
+            this.queue = new PriorityQueue<RunCursor>(Math.max(1, runs.size()), new Comparator<RunCursor>() {
+                public int compare(RunCursor a, RunCursor b) {
+                    return comparator.compare(a.run.data.getData(), a.keyStart(), a.keyLength(),
+                            b.run.data.getData(), b.keyStart(), b.keyLength());
+                }
+            });
+            for (Run run : runs) {
+                if (run.count > 0) {
+                    queue.add(new RunCursor(run));
+                }
+            }
+        }
+
+        public DataInputBuffer getKey() {
+            return key;
+        }
+
+        public DataInputBuffer getValue() {
+            return value;
+        }
+
+        public boolean next() {
+            if (current != null) {
+                current.record++;
+                if (current.record < current.run.count) {
+                    queue.add(current);
+                }
+            }
+            current = queue.poll();
+            if (current == null) {
+                return false;
+            }
+            byte[] bytes = current.run.data.getData();
+            key.reset(bytes, current.keyStart(), current.keyLength());
+            value.reset(bytes, current.keyStart() + current.keyLength(), current.valueLength());
+            return true;
+        }
+
+        public void close() {
+        }
+
+        public Progress getProgress() {
+            return progress;
+        }
+    }
+
+
+    // Counters of one task, merged into the counters of the job when the task ends
+    private static class TaskReporter extends StatusReporter {
+
+        private final Counters taskCounters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return taskCounters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return taskCounters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+
+        void mergeInto(Counters jobCounters) {
+            synchronized (jobCounters) {
+                jobCounters.incrAllCounters(taskCounters);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * One-time conversion of the name file into the binary columnar format (see NameColumnFile).
+ *
+ * Map only job : each map task writes the lines of its split into its own column file
+ * output/path/part-m-xxxxx.ncol, in the order of the lines. The jobs then read the
+ * converted files with -D namestats.input.columnar=true, which reads only the
+ * column each statistic needs, already split and dictionary encoded.
+ * A line with genders but no origins is kept for NameGenderProp; the origin jobs skip it
+ * and count it as malformed, as they do with the text file.
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameColumnConverter {
+
+    public static class Map extends Mapper<LongWritable, Text, LongWritable, Text> {
+
+        // Mapper : lines with a gender field (every line with an origin field has one) are written
+        // as they are read, the others are of no use to any column and are skipped
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            parser.parse(value);
+            if (!parser.hasField(NameRecordParser.GENDERS)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+            context.write(key, value);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            records.close();
+        }
+    }
+
+    // Output format writing the lines (values) into a column file, keys are ignored
+    public static class NameColumnOutputFormat extends FileOutputFormat<Object, Text> {
+
+        @Override
+        public RecordWriter<Object, Text> getRecordWriter(TaskAttemptContext context) throws IOException {
+            Path file = getDefaultWorkFile(context, ".ncol");
+            FSDataOutputStream out = file.getFileSystem(context.getConfiguration()).create(file, false);
+            final NameColumnFile.Writer writer = new NameColumnFile.Writer(out,
+                    NameStatsConfig.columnarBlockRows(context.getConfiguration()));
+
+            return new RecordWriter<Object, Text>() {
+                @Override
+                public void write(Object key, Text line) throws IOException {
+                    writer.append(line);
+                }
+
+                @Override
+                public void close(TaskAttemptContext context) throws IOException {
+                    writer.close();
+                }
+            };
+        }
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            Job job = Job.getInstance(conf);
+            job.setJarByClass(NameColumnConverter.class);
+
+            job.setJobName("Name file to column file conversion");
+
+            job.setOutputKeyClass(LongWritable.class);
+            job.setOutputValueClass(Text.class);
+
+            job.setMapperClass(Map.class);
+            job.setNumReduceTasks(0);
+
+            NameTextInput.setInputFormat(job);
+            job.setOutputFormatClass(NameColumnOutputFormat.class);
+
+            InputRecords.addNamedOutput(job);
+
+            FileInputFormat.addInputPath(job, new Path(paths[0]));
+            FileOutputFormat.setOutputPath(job, new Path(paths[1]));
+
+            LocalEngine.runJob(job);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Binary columnar format of the name file, written once by NameColumnConverter
+ * and read by NameColumnInputFormat.
+ *
+ * Rows are stored by blocks of rows. Inside a block, each column is stored on its own,
+ * so that a job can read the columns it needs and skip the others :
+ * - NAME         : name field as it is in the line (vint length + bytes per row)
+ * - GENDERS      : trimmed genders, dictionary encoded
+ * - ORIGINS      : trimmed origins, blank origins are '?' (as in NameCountByOrigin), dictionary encoded
+ * - ORIGIN_COUNT : number of origins of the name (as in NameCountByOriginCount) and number of
+ *                  '?' or blank origins, two vints per row
+ * A dictionary encoded column starts with the dictionary of the block (vint size, then Text entries)
+ * followed by, for each row, the number of values and their ids in the dictionary (vints).
+ * A line without origin field is kept (it has genders) : its number of origins is -1 in ORIGINS
+ * and ORIGIN_COUNT, and the jobs reading them skip it.
+ *
+ * File layout :
+ *   MAGIC, VERSION
+ *   blocks : first row (long), rows (int), byte length of each column (int), columns
+ *   footer : offset of each block (long), number of blocks (int), offset of the footer (long), MAGIC
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public final class NameColumnFile {
+
+    public static final byte[] MAGIC  = {'N', 'C', 'O', 'L'};
+    public static final byte VERSION  = 2;
+
+    // Columns
+    public static final int NAME            = 0;
+    public static final int GENDERS         = 1;
+    public static final int ORIGINS         = 2;
+    public static final int ORIGIN_COUNT    = 3;
+    public static final int COLUMNS         = 4;
+
+    // Column names used by the projection option (see NameColumnInputFormat)
+    public static final String[] COLUMN_NAMES = {"name", "genders", "origins", "origincount"};
+
+    // First row, rows and column lengths
+    public static final int BLOCK_HEADER_LENGTH = 8 + 4 + 4 * COLUMNS;
+
+    // Number of blocks, footer offset and magic
+    private static final int TRAILER_LENGTH = 4 + 8 + MAGIC.length;
+
+    private NameColumnFile() {
+    }
+
+    public static int column(String name) throws IOException {
+        for (int i = 0; i < COLUMNS; i++) {
+            if (COLUMN_NAMES[i].equals(name.trim())) {
+                return i;
+            }
+        }
+        throw new IOException("Unknown column '" + name + "', columns are " + Arrays.toString(COLUMN_NAMES));
+    }
+
+
+    // Offsets of the blocks of a file read from its footer, followed by the offset of the footer (end of the last block)
+    public static long[] readBlockBoundaries(FSDataInputStream in, long fileLength) throws IOException {
+        if (fileLength < MAGIC.length + 1 + TRAILER_LENGTH) {
+            throw new IOException("Not a name column file (too short)");
+        }
+        in.seek(fileLength - TRAILER_LENGTH);
+        int blocks = in.readInt();
+        long footer = in.readLong();
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a name column file (bad magic)");
+        }
+        in.seek(MAGIC.length);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Name column file version " + version + ", expected " + VERSION + " (convert the file again)");
+        }
+        long[] boundaries = new long[blocks + 1];
+        in.seek(footer);
+        for (int i = 0; i < blocks; i++) {
+            boundaries[i] = in.readLong();
+        }
+        boundaries[blocks] = footer;
+        return boundaries;
+    }
+
+
+    // Writes lines of the name file into the columnar format
+    public static class Writer implements Closeable {
+
+        private final FSDataOutputStream out;
+        private final int rowsPerBlock;
+        private final NameRecordParser parser = new NameRecordParser();
+        private final DataOutputBuffer[] columns = new DataOutputBuffer[COLUMNS];
+        private final DataOutputBuffer header = new DataOutputBuffer();
+        private final Dictionary genders = new Dictionary();
+        private final Dictionary origins = new Dictionary();
+        private final List<Long> blockOffsets = new ArrayList<Long>();
+        private final byte[] unknown = {'?'};
+        private int[] ids = new int[16];
+        private long firstRow;
+        private int rows;
+
+        public Writer(FSDataOutputStream out, int rowsPerBlock) throws IOException {
+            this.out = out;
+            this.rowsPerBlock = rowsPerBlock;
+            for (int i = 0; i < COLUMNS; i++) {
+                columns[i] = new DataOutputBuffer();
+            }
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        public void append(Text line) throws IOException {
+            parser.parse(line);
+            if (!parser.hasField(NameRecordParser.GENDERS)) {
+                throw new IOException("Row " + (firstRow + rows) + " has no gender field");
+            }
+            byte[] bytes = parser.getBytes();
+
+            // Name field as it is
+            int nameStart = parser.fieldStart(NameRecordParser.NAME);
+            int nameLength = parser.fieldEnd(NameRecordParser.NAME) - nameStart;
+            WritableUtils.writeVInt(columns[NAME], nameLength);
+            columns[NAME].write(bytes, nameStart, nameLength);
+
+            // Trimmed genders
+            int count = 0;
+            parser.tokenize(NameRecordParser.GENDERS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                addId(count++, genders.id(bytes, parser.tokenStart(), parser.tokenLength()));
+            }
+            writeIds(columns[GENDERS], count);
+
+            if (!parser.hasField(NameRecordParser.ORIGINS)) {
+                WritableUtils.writeVInt(columns[ORIGINS], -1);
+                WritableUtils.writeVInt(columns[ORIGIN_COUNT], -1);
+                WritableUtils.writeVInt(columns[ORIGIN_COUNT], 0);
+            } else {
+                // Trimmed origins ('?' when blank) and origin count of the untrimmed tokens
+                count = 0;
+                int originCount = 0;
+                int unknowns = 0;
+                parser.tokenize(NameRecordParser.ORIGINS);
+                while (parser.nextToken()) {
+                    if (parser.tokenIs('?')) {
+                        originCount = 0;
+                    } else if (parser.tokenLength() > 0) {
+                        originCount += 1;
+                    }
+                    parser.trimToken();
+                    if (parser.tokenLength() > 0) {
+                        addId(count++, origins.id(bytes, parser.tokenStart(), parser.tokenLength()));
+                        if (parser.tokenIs('?')) {
+                            unknowns++;
+                        }
+                    } else {
+                        addId(count++, origins.id(unknown, 0, unknown.length));
+                        unknowns++;
+                    }
+                }
+                writeIds(columns[ORIGINS], count);
+                WritableUtils.writeVInt(columns[ORIGIN_COUNT], originCount);
+                WritableUtils.writeVInt(columns[ORIGIN_COUNT], unknowns);
+            }
+
+            rows++;
+            if (rows == rowsPerBlock) {
+                writeBlock();
+            }
+        }
+
+        private void addId(int index, int id) {
+            if (index == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[index] = id;
+        }
+
+        private void writeIds(DataOutputBuffer column, int count) throws IOException {
+            WritableUtils.writeVInt(column, count);
+            for (int i = 0; i < count; i++) {
+                WritableUtils.writeVInt(column, ids[i]);
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (rows == 0) {
+                return;
+            }
+            blockOffsets.add(out.getPos());
+
+            // Dictionaries are written in front of the ids of their column
+            header.reset();
+            genders.write(header);
+            int gendersDictionary = header.getLength();
+            origins.write(header);
+            int originsDictionary = header.getLength() - gendersDictionary;
+
+            out.writeLong(firstRow);
+            out.writeInt(rows);
+            out.writeInt(columns[NAME].getLength());
+            out.writeInt(gendersDictionary + columns[GENDERS].getLength());
+            out.writeInt(originsDictionary + columns[ORIGINS].getLength());
+            out.writeInt(columns[ORIGIN_COUNT].getLength());
+
+            out.write(columns[NAME].getData(), 0, columns[NAME].getLength());
+            out.write(header.getData(), 0, gendersDictionary);
+            out.write(columns[GENDERS].getData(), 0, columns[GENDERS].getLength());
+            out.write(header.getData(), gendersDictionary, originsDictionary);
+            out.write(columns[ORIGINS].getData(), 0, columns[ORIGINS].getLength());
+            out.write(columns[ORIGIN_COUNT].getData(), 0, columns[ORIGIN_COUNT].getLength());
+
+            for (DataOutputBuffer column : columns) {
+                column.reset();
+            }
+            genders.clear();
+            origins.clear();
+            firstRow += rows;
+            rows = 0;
+        }
+
+        public void close() throws IOException {
+            try {
+                writeBlock();
+                long footer = out.getPos();
+                for (long offset : blockOffsets) {
+                    out.writeLong(offset);
+                }
+                out.writeInt(blockOffsets.size());
+                out.writeLong(footer);
+                out.write(MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+
+    // Dictionary of a block : values in order of first appearance, id = position
+    private static class Dictionary {
+
+        private final HashMap<Text, Integer> ids = new HashMap<Text, Integer>();
+        private final List<Text> values = new ArrayList<Text>();
+        private final Text probe = new Text();
+
+        int id(byte[] bytes, int start, int length) {
+            probe.set(bytes, start, length);
+            Integer id = ids.get(probe);
+            if (id == null) {
+                Text value = new Text(probe);
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        void write(DataOutputBuffer out) throws IOException {
+            WritableUtils.writeVInt(out, values.size());
+            for (Text value : values) {
+                value.write(out);
+            }
+        }
+
+        void clear() {
+            ids.clear();
+            values.clear();
+        }
+    }
+}
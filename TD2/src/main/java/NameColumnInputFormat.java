@@ -0,0 +1,197 @@
+/**
+ * Input format of the name column files written by NameColumnConverter.
+ *
+ * Splits are made of whole blocks (see NameColumnFile), so no block is read by two tasks.
+ * Only the columns set with setColumns() (or namestats.columnar.columns) are read :
+ * the bytes of the other columns are skipped with a seek and never decoded.
+ * Keys are the row numbers in the file, values are NameColumnRecord.
+ *
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+
+public class NameColumnInputFormat extends FileInputFormat<LongWritable, NameColumnRecord> {
+
+    // Columns read by the jobs (see NameColumnFile for the column numbers)
+    public static void setColumns(Job job, int... columns) {
+        StringBuilder names = new StringBuilder();
+        for (int column : columns) {
+            if (names.length() > 0) names.append(',');
+            names.append(NameColumnFile.COLUMN_NAMES[column]);
+        }
+        job.getConfiguration().set(NameStatsConfig.COLUMNAR_COLUMNS, names.toString());
+    }
+
+    public static boolean[] getColumns(Configuration conf) throws IOException {
+        boolean[] projected = new boolean[NameColumnFile.COLUMNS];
+        String[] names = conf.getTrimmedStrings(NameStatsConfig.COLUMNAR_COLUMNS);
+        for (String name : names) {
+            projected[NameColumnFile.column(name)] = true;
+        }
+        // All columns when not set
+        if (names.length == 0) {
+            Arrays.fill(projected, true);
+        }
+        return projected;
+    }
+
+
+    // Only the column files of the input directories (other files, such as badrecords-m-xxxxx, are ignored)
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = new ArrayList<FileStatus>();
+        for (FileStatus file : super.listStatus(job)) {
+            if (file.getPath().getName().endsWith(".ncol")) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+
+    // Consecutive blocks are grouped until the split size is reached
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        long minSize = Math.max(getFormatMinSplitSize(), getMinSplitSize(job));
+        long maxSize = getMaxSplitSize(job);
+        List<InputSplit> splits = new ArrayList<InputSplit>();
+
+        for (FileStatus file : listStatus(job)) {
+            Path path = file.getPath();
+            FileSystem fs = path.getFileSystem(job.getConfiguration());
+            long[] boundaries;
+            FSDataInputStream in = fs.open(path);
+            try {
+                boundaries = NameColumnFile.readBlockBoundaries(in, file.getLen());
+            } finally {
+                in.close();
+            }
+
+            BlockLocation[] locations = fs.getFileBlockLocations(file, 0, file.getLen());
+            long splitSize = computeSplitSize(file.getBlockSize(), minSize, maxSize);
+            int blocks = boundaries.length - 1;
+            int first = 0;
+            for (int i = 1; i <= blocks; i++) {
+                if (i == blocks || boundaries[i] - boundaries[first] >= splitSize) {
+                    long start = boundaries[first];
+                    String[] hosts = locations.length == 0 ? new String[0] : locations[getBlockIndex(locations, start)].getHosts();
+                    splits.add(makeSplit(path, start, boundaries[i] - start, hosts));
+                    first = i;
+                }
+            }
+        }
+        return splits;
+    }
+
+
+    @Override
+    public RecordReader<LongWritable, NameColumnRecord> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new NameColumnRecordReader();
+    }
+
+
+    public static class NameColumnRecordReader extends RecordReader<LongWritable, NameColumnRecord> {
+
+        private FSDataInputStream in;
+        private long start;
+        private long end;
+        private boolean[] projected;
+        private byte[][] columns = new byte[NameColumnFile.COLUMNS][];
+        private int[] lengths = new int[NameColumnFile.COLUMNS];
+        private LongWritable key = new LongWritable();
+        private NameColumnRecord value;
+
+        // Rows of the current block
+        private long firstRow;
+        private int rows;
+        private int row;
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            Configuration conf = context.getConfiguration();
+            projected = getColumns(conf);
+            value = new NameColumnRecord(projected);
+            start = split.getStart();
+            end = start + split.getLength();
+            in = split.getPath().getFileSystem(conf).open(split.getPath());
+            in.seek(start);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            while (row == rows) {
+                if (in.getPos() >= end) {
+                    return false;
+                }
+                readBlock();
+            }
+            value.nextRow();
+            key.set(firstRow + row);
+            row++;
+            return true;
+        }
+
+        // Read the projected columns of the next block and skip the others
+        private void readBlock() throws IOException {
+            firstRow = in.readLong();
+            rows = in.readInt();
+            row = 0;
+            for (int column = 0; column < NameColumnFile.COLUMNS; column++) {
+                lengths[column] = in.readInt();
+            }
+            for (int column = 0; column < NameColumnFile.COLUMNS; column++) {
+                if (projected[column]) {
+                    if (columns[column] == null || columns[column].length < lengths[column]) {
+                        columns[column] = new byte[Math.max(lengths[column], 4096)];
+                    }
+                    in.readFully(columns[column], 0, lengths[column]);
+                } else {
+                    in.seek(in.getPos() + lengths[column]);
+                }
+            }
+            value.startBlock(columns);
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public NameColumnRecord getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            return end == start ? 1.0f : Math.min(1.0f, (in.getPos() - start) / (float) (end - start));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
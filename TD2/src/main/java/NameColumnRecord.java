@@ -0,0 +1,165 @@
+/**
+ * Row of a name column file, value given to the mapper by NameColumnInputFormat.
+ *
+ * Only the projected columns are read and decoded; the accessors of the other
+ * columns must not be used. Genders and origins are returned as the Text entries
+ * of the block dictionary : they are shared by all rows of the block and must not
+ * be modified (they can be written to the context as they are).
+ *
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public class NameColumnRecord {
+
+    private final boolean[] projected;
+
+    // Data of the columns of the current block and position of the next row in each of them
+    private final byte[][] data = new byte[NameColumnFile.COLUMNS][];
+    private final int[] position = new int[NameColumnFile.COLUMNS];
+    private Text[] genderDictionary;
+    private Text[] originDictionary;
+
+    // Current row
+    private int nameStart;
+    private int nameLength;
+    private int[] genderIds = new int[4];
+    private int genderSize;
+    private int[] originIds = new int[8];
+    private int originSize;
+    private int originCount;
+    private int unknownOriginCount;
+    private boolean hasOrigins;
+
+    public NameColumnRecord(boolean[] projected) {
+        this.projected = projected;
+    }
+
+    public boolean isProjected(int column) {
+        return projected[column];
+    }
+
+
+    // Name field of the line, as it is
+    public void getName(Text name) {
+        name.set(data[NameColumnFile.NAME], nameStart, nameLength);
+    }
+
+    public int getGenderSize() {
+        return genderSize;
+    }
+
+    public Text getGender(int i) {
+        return genderDictionary[genderIds[i]];
+    }
+
+    // Has the line an origin field ? (read from the ORIGINS or ORIGIN_COUNT column)
+    public boolean hasOrigins() {
+        return hasOrigins;
+    }
+
+    // Number of origins, 0 when the line has no origin field
+    public int getOriginSize() {
+        return originSize;
+    }
+
+    public Text getOrigin(int i) {
+        return originDictionary[originIds[i]];
+    }
+
+    // Id of the origin in the dictionary of the block
+    public int getOriginId(int i) {
+        return originIds[i];
+    }
+
+    public Text[] getOriginDictionary() {
+        return originDictionary;
+    }
+
+    // Number of origins of the name, as counted by NameCountByOriginCount
+    public int getOriginCount() {
+        return originCount;
+    }
+
+    // Number of '?' or blank origins of the name
+    public int getUnknownOriginCount() {
+        return unknownOriginCount;
+    }
+
+
+    // A new block was read : data[column] holds the bytes of each projected column
+    void startBlock(byte[][] columns) {
+        for (int column = 0; column < NameColumnFile.COLUMNS; column++) {
+            data[column] = columns[column];
+            position[column] = 0;
+        }
+        if (projected[NameColumnFile.GENDERS]) {
+            genderDictionary = readDictionary(NameColumnFile.GENDERS);
+        }
+        if (projected[NameColumnFile.ORIGINS]) {
+            originDictionary = readDictionary(NameColumnFile.ORIGINS);
+        }
+    }
+
+    // Decode the next row of the block
+    void nextRow() {
+        if (projected[NameColumnFile.NAME]) {
+            nameLength = readVInt(NameColumnFile.NAME);
+            nameStart = position[NameColumnFile.NAME];
+            position[NameColumnFile.NAME] += nameLength;
+        }
+        if (projected[NameColumnFile.GENDERS]) {
+            genderSize = readVInt(NameColumnFile.GENDERS);
+            genderIds = readIds(NameColumnFile.GENDERS, genderSize, genderIds);
+        }
+        if (projected[NameColumnFile.ORIGINS]) {
+            originSize = readVInt(NameColumnFile.ORIGINS);
+            hasOrigins = originSize >= 0;
+            originSize = Math.max(originSize, 0);
+            originIds = readIds(NameColumnFile.ORIGINS, originSize, originIds);
+        }
+        if (projected[NameColumnFile.ORIGIN_COUNT]) {
+            originCount = readVInt(NameColumnFile.ORIGIN_COUNT);
+            unknownOriginCount = readVInt(NameColumnFile.ORIGIN_COUNT);
+            hasOrigins = originCount >= 0;
+        }
+    }
+
+    private Text[] readDictionary(int column) {
+        Text[] dictionary = new Text[readVInt(column)];
+        for (int i = 0; i < dictionary.length; i++) {
+            int length = readVInt(column);
+            dictionary[i] = new Text();
+            dictionary[i].set(data[column], position[column], length);
+            position[column] += length;
+        }
+        return dictionary;
+    }
+
+    private int[] readIds(int column, int size, int[] ids) {
+        if (size > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(size, ids.length * 2));
+        }
+        for (int i = 0; i < size; i++) {
+            ids[i] = readVInt(column);
+        }
+        return ids;
+    }
+
+    private int readVInt(int column) {
+        byte[] bytes = data[column];
+        int start = position[column];
+        position[column] += WritableUtils.decodeVIntSize(bytes[start]);
+        try {
+            return WritableComparator.readVInt(bytes, start);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted column " + NameColumnFile.COLUMN_NAMES[column], e);
+        }
+    }
+}
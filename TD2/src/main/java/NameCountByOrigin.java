@@ -9,7 +9,9 @@
  */
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -18,9 +20,10 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 
 public class NameCountByOrigin {
@@ -29,36 +32,147 @@ public class NameCountByOrigin {
 
         // Mapper : keys are the origins (String) and values are 1 (Integer)
         private final static IntWritable one = new IntWritable(1);
+        private final static Text unknown = new Text("?");
         private Text origin = new Text();
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+
+        // In-mapper combining table (null when the option is disabled)
+        private TextCountTable counts;
+
+        // Salting of the hot keys (null when there is none)
+        private HotKeySalting salting;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            records = new InputRecords(context);
+            salting = HotKeySalting.forTask(conf, context.getTaskAttemptID().getTaskID().getId());
+            if (NameStatsConfig.inMapperCombining(conf)) {
+                counts = new TextCountTable(NameStatsConfig.inMapperMaxBytes(conf));
+            }
+        }
 
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
 
-            // We split the line into parts and access the origin(s)
-            String line = value.toString();
-            String[] listOfOrigin = line.split(";")[2].split(",");
+            // We locate the fields of the line in its raw bytes and access the origin(s),
+            // a line without origin field is skipped
+            if (!parser.parse(value)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+            parser.tokenize(NameRecordParser.ORIGINS);
 
             // For each origin, we create a key-value pair (origin, 1)
-            for(String originString : listOfOrigin){
+            while (parser.nextToken()) {
 
-                originString = originString.trim();
+                parser.trimToken();
 
                 // If length > 0, we have an origin string
-                if (originString.length() > 0) {
-                    origin.set(originString);
-                    context.write(origin, one);
+                if (parser.tokenLength() > 0) {
+                    if (parser.tokenIs('?')) {
+                        records.unknownOrigin();
+                    }
+                    parser.copyToken(origin);
+                    emit(context);
                 }
                 // If length is null, we had a blank space which means unknown origin
-                else if (originString.length() == 0 ){
+                else {
                     // We set the symbol '?' for unknown origin
-                    origin.set("?");
+                    origin.set(unknown);
+                    records.unknownOrigin();
+                    emit(context);
+                }
+            }
+        }
+
+        // Write (origin, 1) or count it in the table, which is flushed when full
+        private void emit(Context context) throws IOException, InterruptedException {
+            records.tokenEmitted();
+            Text key = salting == null ? origin : salting.salt(origin);
+            if (counts == null) {
+                context.write(key, one);
+            } else {
+                counts.add(key, 1);
+                if (counts.isFull()) {
+                    counts.flush(context);
+                }
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (counts != null) {
+                counts.flush(context);
+            }
+            records.close();
+        }
+    }
+
+    public static class ColumnMap extends Mapper<LongWritable, NameColumnRecord, Text, IntWritable> {
+
+        // Mapper of the column files : origins are already trimmed ('?' when blank),
+        // the Text of the block dictionary is written as it is
+        private final static IntWritable one = new IntWritable(1);
+        private final static Text unknown = new Text("?");
+        private InputRecords records;
+
+        // In-mapper combining table (null when the option is disabled)
+        private TextCountTable counts;
+
+        // Salting of the hot keys (null when there is none)
+        private HotKeySalting salting;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            records = new InputRecords(context);
+            salting = HotKeySalting.forTask(conf, context.getTaskAttemptID().getTaskID().getId());
+            if (NameStatsConfig.inMapperCombining(conf)) {
+                counts = new TextCountTable(NameStatsConfig.inMapperMaxBytes(conf));
+            }
+        }
+
+        public void map(LongWritable key, NameColumnRecord value, Context context) throws IOException, InterruptedException {
+            // A line without origin field is skipped, as in Map
+            if (!value.hasOrigins()) {
+                records.malformed();
+                return;
+            }
+            records.parsed();
+            for (int i = 0; i < value.getOriginSize(); i++) {
+                if (value.getOrigin(i).equals(unknown)) {
+                    records.unknownOrigin();
+                }
+                records.tokenEmitted();
+                Text origin = salting == null ? value.getOrigin(i) : salting.salt(value.getOrigin(i));
+                if (counts == null) {
                     context.write(origin, one);
+                } else {
+                    counts.add(origin, 1);
+                    if (counts.isFull()) {
+                        counts.flush(context);
+                    }
                 }
             }
         }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (counts != null) {
+                counts.flush(context);
+            }
+            records.close();
+        }
     }
 
     public static class Reduce extends Reducer<Text, IntWritable, Text, IntWritable> {
 
+        // Partial counts of the salted hot keys, created on the first salted key
+        private MultipleOutputs<Text, IntWritable> outputs;
+        private Text origin = new Text();
+
         // Reducer : keys are the origins (String) and values are lists of 1 (Integer)
         public void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
 
@@ -67,35 +181,100 @@ public class NameCountByOrigin {
             for (IntWritable val : values) {
                 sum += val.get();
             }
-            context.write(key, new IntWritable(sum));
+
+            // A salted sub-key only holds part of the count of its origin, the driver adds them up
+            if (HotKeySalting.unsalt(key, origin)) {
+                if (outputs == null) {
+                    outputs = new MultipleOutputs<Text, IntWritable>(context);
+                }
+                outputs.write(HotKeySalting.SALTED_OUTPUT, origin, new IntWritable(sum));
+            } else {
+                context.write(key, new IntWritable(sum));
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (outputs != null) {
+                outputs.close();
+            }
         }
     }
 
-    // Launching method of Map/Reduce job in main method
-    public static void main(String[] args) throws Exception {
+    // Job of the driver, also used by NameScalingBenchmark
+    public static Job createJob(Configuration conf, Path input, Path output) throws IOException {
+        Job job = Job.getInstance(conf);
+        job.setJarByClass(NameCountByOrigin.class);
 
-        if (args.length != 2) {
-            System.err.printf("Two path arguments are needed.\n");
-        }
-        else {
-            Job job = Job.getInstance();
-            job.setJarByClass(NameCountByOrigin.class);
+        job.setJobName("Task 1 - Name Count By Origin");
 
-            job.setJobName("Task 1 - Name Count By Origin");
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(IntWritable.class);
 
-            job.setOutputKeyClass(Text.class);
-            job.setOutputValueClass(IntWritable.class);
+        job.setReducerClass(Reduce.class);
 
+        // Column files : only the origins column is read
+        if (NameStatsConfig.columnarInput(conf)) {
+            job.setMapperClass(ColumnMap.class);
+            job.setInputFormatClass(NameColumnInputFormat.class);
+            NameColumnInputFormat.setColumns(job, NameColumnFile.ORIGINS);
+        } else {
             job.setMapperClass(Map.class);
-            job.setReducerClass(Reduce.class);
+            NameTextInput.setInputFormat(job);
+        }
+        job.setOutputFormatClass(TextOutputFormat.class);
 
-            job.setInputFormatClass(TextInputFormat.class);
-            job.setOutputFormatClass(TextOutputFormat.class);
+        InputRecords.addNamedOutput(job);
 
-            FileInputFormat.addInputPath(job, new Path(args[0]));
-            FileOutputFormat.setOutputPath(job, new Path(args[1]));
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+
+        return job;
+    }
 
-            job.waitForCompletion(true);
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        // Salted keys would fall outside the sampled ranges, and their partial counts would not be added up
+        else if (NameStatsConfig.totalOrder(conf)
+                && (conf.get(NameStatsConfig.SALT_KEYS) != null || NameStatsConfig.saltDetect(conf))) {
+            System.err.printf("%s cannot be used with %s or %s.\n", NameStatsConfig.TOTAL_ORDER,
+                    NameStatsConfig.SALT_KEYS, NameStatsConfig.SALT_DETECT);
+        }
+        else {
+            Path output = new Path(paths[1]);
+            Job job = createJob(conf, new Path(paths[0]), output);
+
+            // Total order : sampled origins split the keys into sorted ranges, one per reduce task,
+            // so that the part files are sorted one after another (mapreduce.job.reduces reduce tasks at most)
+            Path partitionFile = null;
+            if (NameStatsConfig.totalOrder(conf)) {
+                partitionFile = output.suffix("_partitions");
+                int reduces = NameOriginSampler.writePartitionFile(job, partitionFile);
+                System.out.printf("Total order : %d reduce tasks\n", reduces);
+            }
+            // Otherwise hot keys are salted over several reduce tasks, their partial counts are added up after the job
+            else if (conf.get(NameStatsConfig.SALT_KEYS) != null || NameStatsConfig.saltDetect(conf)) {
+                String[] hot = HotKeySalting.configure(job);
+                System.out.printf("Salted hot keys : %s\n", Arrays.toString(hot));
+            }
+
+            try {
+                if (LocalEngine.runJob(job)) {
+                    HotKeySalting.fold(job.getConfiguration(), output, job.getNumReduceTasks());
+                }
+            } finally {
+                if (partitionFile != null) {
+                    partitionFile.getFileSystem(conf).delete(partitionFile, false);
+                }
+            }
         }
     }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@
 
 import java.io.IOException;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -17,9 +18,9 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 
 public class NameCountByOriginCount {
@@ -29,31 +30,121 @@ public class NameCountByOriginCount {
         // Mapper : keys are the the number of origin found per name (Integer) and value is 1 (Integer)
         private final static IntWritable one = new IntWritable(1);
         private IntWritable originCount = new IntWritable();
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+
+        // In-mapper combining table (null when the option is disabled)
+        private IntCountTable counts;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            records = new InputRecords(context);
+            if (NameStatsConfig.inMapperCombining(conf)) {
+                counts = new IntCountTable(NameStatsConfig.inMapperMaxBytes(conf));
+            }
+        }
 
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
 
-            // We split the line in parts and process the data of a name
-            String line = value.toString();
-            String[] listOfOrigin = line.split(";")[2].split(",");
+            // We locate the fields of the line in its raw bytes and process the data of a name,
+            // a line without origin field is skipped
+            if (!parser.parse(value)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+            parser.tokenize(NameRecordParser.ORIGINS);
             int count = 0 ;
 
             // We loop to count the number of origins which is 0 by default (counter)
-            for(String originString : listOfOrigin) {
+            while (parser.nextToken()) {
 
                 // If we find the string '?', we keep origin to 0
-                if (originString.equals("?")){
+                if (parser.tokenIs('?')){
                     count = 0;
                 }
                 // Otherwise, when origin is explicit, we increment the counter
-                else if (originString.length() > 0) {
+                else if (parser.tokenLength() > 0) {
                     count += 1;
                 }
 
+                // '?' or blank origin (after trimming, like the other jobs)
+                parser.trimToken();
+                if (parser.tokenLength() == 0 || parser.tokenIs('?')) {
+                    records.unknownOrigin();
+                }
+
+            }
+            // Write (count, 1) or count it in the table, which is flushed when full
+            records.tokenEmitted();
+            if (counts == null) {
+                originCount.set(count);
+                context.write(originCount, one);
+            } else {
+                counts.add(count, 1);
+                if (counts.isFull()) {
+                    counts.flush(context);
+                }
             }
-            originCount.set(count);
-            context.write(originCount, one);
 
         }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (counts != null) {
+                counts.flush(context);
+            }
+            records.close();
+        }
+    }
+
+    public static class ColumnMap extends Mapper<LongWritable, NameColumnRecord, IntWritable, IntWritable> {
+
+        // Mapper of the column files : the origin count of each name is stored in its own column
+        private final static IntWritable one = new IntWritable(1);
+        private IntWritable originCount = new IntWritable();
+        private InputRecords records;
+
+        // In-mapper combining table (null when the option is disabled)
+        private IntCountTable counts;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            records = new InputRecords(context);
+            if (NameStatsConfig.inMapperCombining(conf)) {
+                counts = new IntCountTable(NameStatsConfig.inMapperMaxBytes(conf));
+            }
+        }
+
+        public void map(LongWritable key, NameColumnRecord value, Context context) throws IOException, InterruptedException {
+            // A line without origin field is skipped, as in Map
+            if (!value.hasOrigins()) {
+                records.malformed();
+                return;
+            }
+            records.parsed();
+            records.unknownOrigins(value.getUnknownOriginCount());
+            records.tokenEmitted();
+            if (counts == null) {
+                originCount.set(value.getOriginCount());
+                context.write(originCount, one);
+            } else {
+                counts.add(value.getOriginCount(), 1);
+                if (counts.isFull()) {
+                    counts.flush(context);
+                }
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (counts != null) {
+                counts.flush(context);
+            }
+            records.close();
+        }
     }
 
     public static class Reduce extends Reducer<IntWritable, IntWritable, IntWritable, IntWritable> {
@@ -70,31 +161,51 @@ public class NameCountByOriginCount {
         }
     }
 
-    // Launching method of Map/Reduce job in main method
-    public static void main(String[] args) throws Exception {
+    // Job of the driver, also used by NameScalingBenchmark
+    public static Job createJob(Configuration conf, Path input, Path output) throws IOException {
+        Job job = Job.getInstance(conf);
+        job.setJarByClass(NameCountByOriginCount.class);
 
-        if (args.length != 2) {
-            System.err.printf("Two path arguments are needed.\n");
-        }
-        else {
-            Job job = Job.getInstance();
-            job.setJarByClass(NameCountByOriginCount.class);
+        job.setJobName("Task 2 - Name Count By Origin Count");
 
-            job.setJobName("Task 2 - Name Count By Origin Count");
+        job.setOutputKeyClass(IntWritable.class);
+        job.setOutputValueClass(IntWritable.class);
 
-            job.setOutputKeyClass(IntWritable.class);
-            job.setOutputValueClass(IntWritable.class);
+        job.setReducerClass(Reduce.class);
 
+        // Column files : only the origin count column is read
+        if (NameStatsConfig.columnarInput(conf)) {
+            job.setMapperClass(ColumnMap.class);
+            job.setInputFormatClass(NameColumnInputFormat.class);
+            NameColumnInputFormat.setColumns(job, NameColumnFile.ORIGIN_COUNT);
+        } else {
             job.setMapperClass(Map.class);
-            job.setReducerClass(Reduce.class);
+            NameTextInput.setInputFormat(job);
+        }
+        job.setOutputFormatClass(TextOutputFormat.class);
 
-            job.setInputFormatClass(TextInputFormat.class);
-            job.setOutputFormatClass(TextOutputFormat.class);
+        InputRecords.addNamedOutput(job);
 
-            FileInputFormat.addInputPath(job, new Path(args[0]));
-            FileOutputFormat.setOutputPath(job, new Path(args[1]));
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+
+        return job;
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            Job job = createJob(conf, new Path(paths[0]), new Path(paths[1]));
 
-            job.waitForCompletion(true);
+            LocalEngine.runJob(job);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+/**
+ * This Map/Reduce job counts the number of name by origin, like NameCountByOrigin,
+ * but shuffles dictionary ids (VIntWritable) instead of origin strings.
+ *
+ * The origin dictionary is given with -D namestats.origin.dictionary=path/to/file
+ * (one origin per line). Without it, a first pass job writes the distinct origins
+ * of the input into output/path.dictionary. The dictionary is shipped to the tasks
+ * with the distributed cache, the reducer maps ids back to origin strings.
+ * Ids follow the order of the origins, so the output is the same as NameCountByOrigin.
+ *
+ * A mapper fails if it finds an origin missing from a given dictionary.
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameCountByOriginEncoded {
+
+    public static class Map extends Mapper<LongWritable, Text, VIntWritable, IntWritable> {
+
+        // Mapper : keys are the ids of the origins (Integer) and values are 1 (Integer)
+        private final static IntWritable one = new IntWritable(1);
+        private final static Text unknown = new Text("?");
+        private Text origin = new Text();
+        private VIntWritable originId = new VIntWritable();
+        private IntWritable count = new IntWritable();
+        private NameRecordParser parser = new NameRecordParser();
+        private OriginDictionary dictionary;
+        private InputRecords records;
+
+        // In-mapper combining : ids are dense, so counts are kept in an array indexed by id
+        private int[] counts;
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            dictionary = OriginDictionary.load(context);
+            records = new InputRecords(context);
+            if (NameStatsConfig.inMapperCombining(context.getConfiguration())) {
+                counts = new int[dictionary.size()];
+            }
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+
+            // A line without origin field is skipped
+            if (!parser.parse(value)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+            parser.tokenize(NameRecordParser.ORIGINS);
+
+            // For each origin, we create a key-value pair (id of origin, 1)
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenLength() > 0) {
+                    parser.copyToken(origin);
+                } else {
+                    origin.set(unknown);
+                }
+                if (parser.tokenLength() == 0 || parser.tokenIs('?')) {
+                    records.unknownOrigin();
+                }
+
+                int id = dictionary.id(origin);
+                if (id < 0) {
+                    throw new IOException("Origin '" + origin + "' is not in the dictionary, it has to be rebuilt");
+                }
+                records.tokenEmitted();
+                if (counts == null) {
+                    originId.set(id);
+                    context.write(originId, one);
+                } else {
+                    counts[id] += 1;
+                }
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (counts != null) {
+                for (int id = 0; id < counts.length; id++) {
+                    if (counts[id] > 0) {
+                        originId.set(id);
+                        count.set(counts[id]);
+                        context.write(originId, count);
+                    }
+                }
+            }
+            records.close();
+        }
+    }
+
+    public static class Combine extends Reducer<VIntWritable, IntWritable, VIntWritable, IntWritable> {
+
+        private IntWritable count = new IntWritable();
+
+        // Combiner : partial sums by origin id
+        public void reduce(VIntWritable key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+            int sum = 0;
+            for (IntWritable val : values) {
+                sum += val.get();
+            }
+            count.set(sum);
+            context.write(key, count);
+        }
+    }
+
+    public static class Reduce extends Reducer<VIntWritable, IntWritable, Text, IntWritable> {
+
+        private OriginDictionary dictionary;
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            dictionary = OriginDictionary.load(context);
+        }
+
+        // Reducer : keys are origin ids (Integer), written back as origins (String)
+        public void reduce(VIntWritable key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+            int sum = 0;
+            for (IntWritable val : values) {
+                sum += val.get();
+            }
+            context.write(dictionary.origin(key.get()), new IntWritable(sum));
+        }
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            // Dictionary given by the user, or built by a first pass over the input
+            String dictionaryOption = conf.get(NameStatsConfig.ORIGIN_DICTIONARY);
+            Path dictionary;
+            if (dictionaryOption != null) {
+                dictionary = new Path(dictionaryOption);
+            } else {
+                dictionary = OriginDictionary.build(conf, new Path(paths[0]), new Path(paths[1] + ".dictionary"));
+            }
+
+            Job job = Job.getInstance(conf);
+            job.setJarByClass(NameCountByOriginEncoded.class);
+
+            job.setJobName("Task 1 - Name Count By Origin (dictionary encoded)");
+
+            job.setMapOutputKeyClass(VIntWritable.class);
+            job.setMapOutputValueClass(IntWritable.class);
+            job.setOutputKeyClass(Text.class);
+            job.setOutputValueClass(IntWritable.class);
+
+            // Serialized ids are compared without deserializing them
+            job.setSortComparatorClass(VIntComparator.class);
+
+            job.setMapperClass(Map.class);
+            job.setCombinerClass(Combine.class);
+            job.setReducerClass(Reduce.class);
+
+            NameTextInput.setInputFormat(job);
+            job.setOutputFormatClass(TextOutputFormat.class);
+
+            OriginDictionary.addToJob(job, dictionary);
+            InputRecords.addNamedOutput(job);
+
+            FileInputFormat.addInputPath(job, new Path(paths[0]));
+            FileOutputFormat.setOutputPath(job, new Path(paths[1]));
+
+            LocalEngine.runJob(job);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Generator of synthetic name files (name;genders;origins;frequency), to measure the jobs
+ * on inputs of any size without the real file.
+ *
+ * Options (see NameStatsConfig) :
+ * - namestats.generator.rows         : number of lines, default 1000000
+ * - namestats.generator.bytes        : size of the file (100m, 1g, ...), replaces the number of lines when set
+ * - namestats.generator.origins      : number of distinct origins (origin0, origin1, ...), default 100
+ * - namestats.generator.zipf         : skew of the origins, origin k is drawn with probability 1 / (k + 1)^s, default 1.0
+ * - namestats.generator.multi.origin : share of the lines with 2 to 4 origins (1 otherwise), default 0.3
+ * - namestats.generator.unknown      : share of the origins written '?', default 0.2
+ * - namestats.generator.blank        : share of the blank origin fields and of the blank gender fields, default 0.05
+ * - namestats.generator.seed         : the file only depends on the options and the seed, default 1
+ *
+ * Usage : hadoop jar 'jar file' NameDataGenerator -D namestats.generator.bytes=1g output/file
+ *
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameDataGenerator {
+
+    private static final byte[][] GENDERS = {
+            "f".getBytes(), "m".getBytes(), "f, m".getBytes(), "m,f".getBytes()
+    };
+    private static final byte[][] SEPARATORS = {",".getBytes(), ", ".getBytes()};
+    private static final byte[] NAME = "name".getBytes();
+
+    private final Random random;
+    private final byte[][] origins;
+    private final double[] cumulative;
+    private final double multiOrigin;
+    private final double unknown;
+    private final double blank;
+
+    // Line being written
+    private byte[] line = new byte[256];
+    private int length;
+    private final int[] drawn = new int[4];
+
+    public NameDataGenerator(Configuration conf) {
+        this.random      = new Random(conf.getLong(NameStatsConfig.GENERATOR_SEED, NameStatsConfig.DEFAULT_GENERATOR_SEED));
+        this.multiOrigin = conf.getDouble(NameStatsConfig.GENERATOR_MULTI_ORIGIN, NameStatsConfig.DEFAULT_GENERATOR_MULTI_ORIGIN);
+        this.unknown     = conf.getDouble(NameStatsConfig.GENERATOR_UNKNOWN, NameStatsConfig.DEFAULT_GENERATOR_UNKNOWN);
+        this.blank       = conf.getDouble(NameStatsConfig.GENERATOR_BLANK, NameStatsConfig.DEFAULT_GENERATOR_BLANK);
+
+        // Cumulative Zipf distribution of the origins, drawn by binary search
+        int count = Math.max(1, conf.getInt(NameStatsConfig.GENERATOR_ORIGINS, NameStatsConfig.DEFAULT_GENERATOR_ORIGINS));
+        double skew = conf.getDouble(NameStatsConfig.GENERATOR_ZIPF, NameStatsConfig.DEFAULT_GENERATOR_ZIPF);
+        this.origins    = new byte[count][];
+        this.cumulative = new double[count];
+        double total = 0;
+        for (int k = 0; k < count; k++) {
+            origins[k] = ("origin" + k).getBytes();
+            total += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = total;
+        }
+        for (int k = 0; k < count; k++) {
+            cumulative[k] /= total;
+        }
+    }
+
+
+    // Writes the file given by the options, returns the number of lines
+    public static long generate(Configuration conf, Path file) throws IOException {
+        long rows = conf.getLong(NameStatsConfig.GENERATOR_ROWS, NameStatsConfig.DEFAULT_GENERATOR_ROWS);
+        long bytes = conf.getLongBytes(NameStatsConfig.GENERATOR_BYTES, -1);
+        NameDataGenerator generator = new NameDataGenerator(conf);
+
+        OutputStream out = file.getFileSystem(conf).create(file, true);
+        try {
+            long row = 0;
+            long written = 0;
+            while (bytes >= 0 ? written < bytes : row < rows) {
+                generator.nextLine(row++);
+                out.write(generator.line, 0, generator.length);
+                written += generator.length;
+            }
+            return row;
+        } finally {
+            out.close();
+        }
+    }
+
+
+    private void nextLine(long row) {
+        length = 0;
+        append(NAME);
+        append(Long.toString(row).getBytes());
+        append((byte) ';');
+
+        if (random.nextDouble() >= blank) {
+            append(GENDERS[random.nextInt(GENDERS.length)]);
+        }
+        append((byte) ';');
+
+        if (random.nextDouble() >= blank) {
+            int count = random.nextDouble() < multiOrigin ? 2 + random.nextInt(3) : 1;
+            byte[] separator = SEPARATORS[random.nextInt(SEPARATORS.length)];
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    append(separator);
+                }
+                if (random.nextDouble() < unknown) {
+                    append((byte) '?');
+                } else {
+                    append(origins[drawOrigin(i)]);
+                }
+            }
+        }
+        append((byte) ';');
+
+        append(Integer.toString(random.nextInt(100)).getBytes());
+        append((byte) '.');
+        append(Integer.toString(random.nextInt(10)).getBytes());
+        append((byte) '\n');
+    }
+
+    // Origin of rank k with probability proportional to 1 / (k + 1)^s, different from the previous ones of the line when possible
+    private int drawOrigin(int index) {
+        int origin = 0;
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int k = Arrays.binarySearch(cumulative, random.nextDouble());
+            origin = Math.min(k < 0 ? -k - 1 : k, origins.length - 1);
+            boolean repeated = false;
+            for (int i = 0; i < index; i++) {
+                repeated |= drawn[i] == origin;
+            }
+            if (!repeated) {
+                break;
+            }
+        }
+        drawn[index] = origin;
+        return origin;
+    }
+
+    private void append(byte[] bytes) {
+        if (length + bytes.length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + bytes.length));
+        }
+        System.arraycopy(bytes, 0, line, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void append(byte b) {
+        if (length == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[length++] = b;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, the path remains
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 1) {
+            System.err.printf("One path argument is needed.\n");
+        }
+        else {
+            long start = System.currentTimeMillis();
+            long rows = generate(conf, new Path(paths[0]));
+            System.out.printf("%d lines written to %s in %d ms\n", rows, paths[0], System.currentTimeMillis() - start);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Composite key of the distinct name mode of NameGenderProp : gender and 64 bits fingerprint of the name.
+ *
+ * Keys are sorted by gender, then by fingerprint, and grouped by gender only (GenderComparator) :
+ * each reduce call sees all the fingerprints of one gender in order, so that the duplicates of a
+ * name are next to each other and are counted once without being kept in memory.
+ * The fingerprint is the Hash64 of the trimmed name : two different names have the same one with
+ * probability about n^2 / 2^65 for n names (less than 1e-7 for a million names).
+ *
+ * Serialized form : gender (1 byte) followed by the fingerprint (8 bytes, big endian).
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+
+public class NameGenderKey implements WritableComparable<NameGenderKey> {
+
+    public static final byte FEMALE = 0;
+    public static final byte MALE   = 1;
+
+    private byte gender;
+    private long fingerprint;
+
+    public byte getGender() {
+        return gender;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public void set(byte gender, long fingerprint) {
+        this.gender      = gender;
+        this.fingerprint = fingerprint;
+    }
+
+    // Fingerprint of the name bytes[start, end) without its leading and trailing white spaces
+    public static long fingerprint(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return Hash64.hash(bytes, start, end - start);
+    }
+
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(gender);
+        out.writeLong(fingerprint);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        gender      = in.readByte();
+        fingerprint = in.readLong();
+    }
+
+    public int compareTo(NameGenderKey other) {
+        if (gender != other.gender) {
+            return gender < other.gender ? -1 : 1;
+        }
+        return fingerprint < other.fingerprint ? -1 : (fingerprint == other.fingerprint ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof NameGenderKey)) {
+            return false;
+        }
+        NameGenderKey key = (NameGenderKey) other;
+        return gender == key.gender && fingerprint == key.fingerprint;
+    }
+
+    // Used by the HashPartitioner
+    @Override
+    public int hashCode() {
+        return 31 * gender + (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return gender + ":" + Long.toHexString(fingerprint);
+    }
+
+
+    // Compares the gender byte, then the fingerprint
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(NameGenderKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            if (b1[s1] != b2[s2]) {
+                return b1[s1] < b2[s2] ? -1 : 1;
+            }
+            long f1 = readLong(b1, s1 + 1);
+            long f2 = readLong(b2, s2 + 1);
+            return f1 < f2 ? -1 : (f1 == f2 ? 0 : 1);
+        }
+    }
+
+    // Grouping comparator : only the gender byte
+    public static class GenderComparator extends WritableComparator {
+
+        public GenderComparator() {
+            super(NameGenderKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return b1[s1] == b2[s2] ? 0 : (b1[s1] < b2[s2] ? -1 : 1);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            byte g1 = ((NameGenderKey) a).gender;
+            byte g2 = ((NameGenderKey) b).gender;
+            return g1 == g2 ? 0 : (g1 < g2 ? -1 : 1);
+        }
+    }
+
+    static {
+        WritableComparator.define(NameGenderKey.class, new Comparator());
+    }
+}
@@ -5,69 +5,189 @@
  * To simplify the computation, when the same name appears on two different
  * lines, we consider it to be two different names.
  *
+ * With namestats.genderprop.distinct=true, each distinct (name, gender) is counted once :
+ * the mappers write (gender, fingerprint of the name) keys (see NameGenderKey) of 9 bytes,
+ * sorted by fingerprint and grouped by gender, so that a single reducer counts the distinct
+ * fingerprints of each gender while reading them, without keeping them (secondary sort).
+ *
  */
 
 
 import java.io.*;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 
 public class NameGenderProp {
 
-    public static class Map extends Mapper<LongWritable, Text, Text, IntWritable> {
+    public static class Map extends Mapper<LongWritable, Text, Text, SumCountWritable> {
 
-        // Mapper : keys are gender (String) and values are 1 (Integer)
-        private final static IntWritable one = new IntWritable(1);
-        private final static IntWritable zero = new IntWritable(0);
+        // Mapper : keys are gender (String) and values are partial aggregates (gender occurrences, names)
+        private final static SumCountWritable one = new SumCountWritable(1, 1);
+        private final static SumCountWritable zero = new SumCountWritable(0, 1);
         private final static Text female = new Text("Female Name");
         private final static Text male = new Text("Male Name");
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+
+        // In-mapper combining : one partial aggregate per gender (null when the option is disabled)
+        private SumCountWritable femaleCounts;
+        private SumCountWritable maleCounts;
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
+            if (NameStatsConfig.inMapperCombining(context.getConfiguration())) {
+                femaleCounts = new SumCountWritable();
+                maleCounts   = new SumCountWritable();
+            }
+        }
 
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
 
-            // We split line to process the gender information
-            String line = value.toString();
-            String[] genders = line.split(";")[1].split(",");
+            // We locate the fields of the line in its raw bytes to process the gender information,
+            // a line without gender field is skipped
+            parser.parse(value);
+            if (!parser.hasField(NameRecordParser.GENDERS)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+            parser.tokenize(NameRecordParser.GENDERS);
 
             // We loop on each gender (1 or 2 gender)
-            for(String genderString : genders){
-                genderString = genderString.trim();
-                // If gender is female, we output two pairs : ('f',1) and ('m',0)
-                if(genderString.equals("f")){
-                    context.write(female, one);
-                    context.write(male, zero);
-                // If gender is female, we output two pairs : ('m',1) and ('f',0)
-                }else if(genderString.equals("m")){
-                    context.write(male, one);
-                    context.write(female, zero);
+            while (parser.nextToken()){
+                parser.trimToken();
+                // If gender is female, we output two pairs : ('f',(1,1)) and ('m',(0,1))
+                if(parser.tokenIs('f')){
+                    emit(context, female, one, male, zero);
+                // If gender is male, we output two pairs : ('m',(1,1)) and ('f',(0,1))
+                }else if(parser.tokenIs('m')){
+                    emit(context, male, one, female, zero);
+                }
+            }
+        }
+
+        // Write the two pairs, or add them to the partial aggregates of the task
+        private void emit(Context context, Text gender, SumCountWritable genderValue,
+                          Text otherGender, SumCountWritable otherValue) throws IOException, InterruptedException {
+            records.tokenEmitted();
+            if (femaleCounts == null) {
+                context.write(gender, genderValue);
+                context.write(otherGender, otherValue);
+            } else {
+                (gender == female ? femaleCounts : maleCounts).add(genderValue);
+                (otherGender == female ? femaleCounts : maleCounts).add(otherValue);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (femaleCounts != null && femaleCounts.getCount() > 0) {
+                context.write(female, femaleCounts);
+                context.write(male, maleCounts);
+            }
+            records.close();
+        }
+    }
+
+    public static class ColumnMap extends Mapper<LongWritable, NameColumnRecord, Text, SumCountWritable> {
+
+        // Mapper of the column files : genders are already trimmed, same pairs as Map
+        private final static SumCountWritable one = new SumCountWritable(1, 1);
+        private final static SumCountWritable zero = new SumCountWritable(0, 1);
+        private final static Text female = new Text("Female Name");
+        private final static Text male = new Text("Male Name");
+        private final static Text f = new Text("f");
+        private final static Text m = new Text("m");
+        private InputRecords records;
+
+        // In-mapper combining : one partial aggregate per gender (null when the option is disabled)
+        private SumCountWritable femaleCounts;
+        private SumCountWritable maleCounts;
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
+            if (NameStatsConfig.inMapperCombining(context.getConfiguration())) {
+                femaleCounts = new SumCountWritable();
+                maleCounts   = new SumCountWritable();
+            }
+        }
+
+        public void map(LongWritable key, NameColumnRecord value, Context context) throws IOException, InterruptedException {
+            // Every line of the column files has a gender field
+            records.parsed();
+            for (int i = 0; i < value.getGenderSize(); i++) {
+                Text gender = value.getGender(i);
+                if (gender.equals(f)) {
+                    emit(context, female, male);
+                } else if (gender.equals(m)) {
+                    emit(context, male, female);
                 }
             }
         }
+
+        // Write (gender, (1,1)) and (other gender, (0,1)), or add them to the partial aggregates of the task
+        private void emit(Context context, Text gender, Text otherGender) throws IOException, InterruptedException {
+            records.tokenEmitted();
+            if (femaleCounts == null) {
+                context.write(gender, one);
+                context.write(otherGender, zero);
+            } else {
+                (gender == female ? femaleCounts : maleCounts).add(one);
+                (otherGender == female ? femaleCounts : maleCounts).add(zero);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (femaleCounts != null && femaleCounts.getCount() > 0) {
+                context.write(female, femaleCounts);
+                context.write(male, maleCounts);
+            }
+            records.close();
+        }
     }
 
-    public static class Reduce extends Reducer<Text, IntWritable, Text, FloatWritable> {
+    public static class Combine extends Reducer<Text, SumCountWritable, Text, SumCountWritable> {
 
-        // Reducer : keys are gender (String) and values are list of 0 and 1 (Integer)
-        public void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+        private SumCountWritable partial = new SumCountWritable();
 
-            // We sum the 0 and 1 to find the number of occurrence of the gender
-            int sum = 0;
-            // We want the size of the list which is the total of names, regardless of gender
-            int size = 0;
-            for (IntWritable val : values) {
-                sum += val.get();
-                size += 1;
+        // Combiner : partial aggregates of a gender are merged, the proportion is computed by the reducer
+        public void reduce(Text key, Iterable<SumCountWritable> values, Context context) throws IOException, InterruptedException {
+            partial.set(0, 0);
+            for (SumCountWritable val : values) {
+                partial.add(val);
+            }
+            context.write(key, partial);
+        }
+    }
+
+    public static class Reduce extends Reducer<Text, SumCountWritable, Text, FloatWritable> {
+
+        // Reducer : keys are gender (String) and values are partial aggregates (gender occurrences, names)
+        public void reduce(Text key, Iterable<SumCountWritable> values, Context context) throws IOException, InterruptedException {
+
+            // We sum the occurrences of the gender
+            long sum = 0;
+            // and the total of names, regardless of gender
+            long size = 0;
+            for (SumCountWritable val : values) {
+                sum += val.getSum();
+                size += val.getCount();
             }
             // We compute the percentage for the gender by dividing gender occurrence by total or names
             float proportion = 100 * (float)sum / (float)size ;
@@ -75,32 +195,209 @@ public class NameGenderProp {
         }
     }
 
-    // Launching method of Map/Reduce job in main method
-    public static void main(String[] args) throws Exception {
+    public static class DistinctMap extends Mapper<LongWritable, Text, NameGenderKey, NullWritable> {
 
-        if (args.length != 2){
-            System.err.printf("Two path arguments are needed.\n");
+        // Mapper of the distinct mode : keys are (gender, fingerprint of the name)
+        private NameRecordParser parser = new NameRecordParser();
+        private NameGenderKey pair = new NameGenderKey();
+        private InputRecords records;
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
         }
-        else {
-            Job job = Job.getInstance();
-            job.setJarByClass(NameCountByOrigin.class);
 
-            job.setJobName("Task 3 - Name Gender Proportion");
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
 
-            job.setOutputKeyClass(Text.class);
-            job.setMapOutputValueClass(IntWritable.class);
-            job.setOutputValueClass(FloatWritable.class);
+            // Same lines and genders as Map
+            parser.parse(value);
+            if (!parser.hasField(NameRecordParser.GENDERS)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+            long fingerprint = NameGenderKey.fingerprint(parser.getBytes(),
+                    parser.fieldStart(NameRecordParser.NAME), parser.fieldEnd(NameRecordParser.NAME));
 
-            job.setMapperClass(Map.class);
+            parser.tokenize(NameRecordParser.GENDERS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenIs('f')) {
+                    emit(context, NameGenderKey.FEMALE, fingerprint);
+                } else if (parser.tokenIs('m')) {
+                    emit(context, NameGenderKey.MALE, fingerprint);
+                }
+            }
+        }
+
+        private void emit(Context context, byte gender, long fingerprint) throws IOException, InterruptedException {
+            records.tokenEmitted();
+            pair.set(gender, fingerprint);
+            context.write(pair, NullWritable.get());
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            records.close();
+        }
+    }
+
+    public static class DistinctColumnMap extends Mapper<LongWritable, NameColumnRecord, NameGenderKey, NullWritable> {
+
+        // Mapper of the distinct mode for the column files : names and genders columns are read
+        private final static Text f = new Text("f");
+        private final static Text m = new Text("m");
+        private Text name = new Text();
+        private NameGenderKey pair = new NameGenderKey();
+        private InputRecords records;
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
+        }
+
+        public void map(LongWritable key, NameColumnRecord value, Context context) throws IOException, InterruptedException {
+            records.parsed();
+            value.getName(name);
+            long fingerprint = NameGenderKey.fingerprint(name.getBytes(), 0, name.getLength());
+            for (int i = 0; i < value.getGenderSize(); i++) {
+                Text gender = value.getGender(i);
+                if (gender.equals(f)) {
+                    emit(context, NameGenderKey.FEMALE, fingerprint);
+                } else if (gender.equals(m)) {
+                    emit(context, NameGenderKey.MALE, fingerprint);
+                }
+            }
+        }
+
+        private void emit(Context context, byte gender, long fingerprint) throws IOException, InterruptedException {
+            records.tokenEmitted();
+            pair.set(gender, fingerprint);
+            context.write(pair, NullWritable.get());
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            records.close();
+        }
+    }
+
+    public static class DistinctCombine extends Reducer<NameGenderKey, NullWritable, NameGenderKey, NullWritable> {
+
+        // Combiner : duplicates of the map task are written once. The key changes while iterating
+        // when a group holds several fingerprints, so a key is written each time it changes.
+        public void reduce(NameGenderKey key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+            boolean first = true;
+            long previous = 0;
+            for (NullWritable val : values) {
+                if (first || key.getFingerprint() != previous) {
+                    context.write(key, val);
+                    previous = key.getFingerprint();
+                    first = false;
+                }
+            }
+        }
+    }
+
+    public static class DistinctReduce extends Reducer<NameGenderKey, NullWritable, Text, FloatWritable> {
+
+        private final static Text female = new Text("Female Name");
+        private final static Text male = new Text("Male Name");
+
+        // Distinct names of each gender
+        private long[] distinct = new long[2];
+
+        // Reducer : one call per gender, the fingerprints come in order with the key
+        public void reduce(NameGenderKey key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+            boolean first = true;
+            long previous = 0;
+            for (NullWritable val : values) {
+                if (first || key.getFingerprint() != previous) {
+                    distinct[key.getGender()]++;
+                    previous = key.getFingerprint();
+                    first = false;
+                }
+            }
+        }
+
+        // The proportions need the counts of both genders
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            long size = distinct[NameGenderKey.FEMALE] + distinct[NameGenderKey.MALE];
+            if (size > 0) {
+                context.write(female, new FloatWritable(100 * (float) distinct[NameGenderKey.FEMALE] / (float) size));
+                context.write(male, new FloatWritable(100 * (float) distinct[NameGenderKey.MALE] / (float) size));
+            }
+        }
+    }
+
+    // Job of the driver, also used by NameScalingBenchmark
+    public static Job createJob(Configuration conf, Path input, Path output) throws IOException {
+        Job job = Job.getInstance(conf);
+        job.setJarByClass(NameCountByOrigin.class);
+
+        job.setJobName("Task 3 - Name Gender Proportion");
+
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(FloatWritable.class);
+
+        if (NameStatsConfig.genderPropDistinct(conf)) {
+            // Distinct names : fingerprints sorted within each gender, one reducer counts both genders
+            job.setMapOutputKeyClass(NameGenderKey.class);
+            job.setMapOutputValueClass(NullWritable.class);
+            job.setGroupingComparatorClass(NameGenderKey.GenderComparator.class);
+            job.setCombinerClass(DistinctCombine.class);
+            job.setReducerClass(DistinctReduce.class);
+            job.setNumReduceTasks(1);
+
+            // Column files : names and genders columns are read
+            if (NameStatsConfig.columnarInput(conf)) {
+                job.setMapperClass(DistinctColumnMap.class);
+                job.setInputFormatClass(NameColumnInputFormat.class);
+                NameColumnInputFormat.setColumns(job, NameColumnFile.NAME, NameColumnFile.GENDERS);
+            } else {
+                job.setMapperClass(DistinctMap.class);
+                NameTextInput.setInputFormat(job);
+            }
+        } else {
+            job.setMapOutputValueClass(SumCountWritable.class);
+            job.setCombinerClass(Combine.class);
             job.setReducerClass(Reduce.class);
 
-            job.setInputFormatClass(TextInputFormat.class);
-            job.setOutputFormatClass(TextOutputFormat.class);
+            // Column files : only the genders column is read
+            if (NameStatsConfig.columnarInput(conf)) {
+                job.setMapperClass(ColumnMap.class);
+                job.setInputFormatClass(NameColumnInputFormat.class);
+                NameColumnInputFormat.setColumns(job, NameColumnFile.GENDERS);
+            } else {
+                job.setMapperClass(Map.class);
+                NameTextInput.setInputFormat(job);
+            }
+        }
+        job.setOutputFormatClass(TextOutputFormat.class);
+
+        InputRecords.addNamedOutput(job);
+
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+
+        return job;
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
 
-            FileInputFormat.addInputPath(job, new Path(args[0]));
-            FileOutputFormat.setOutputPath(job, new Path(args[1]));
+        if (paths.length != 2){
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            Job job = createJob(conf, new Path(paths[0]), new Path(paths[1]));
 
-            job.waitForCompletion(true);
+            LocalEngine.runJob(job);
         }
     }
 }
@@ -0,0 +1,176 @@
+/**
+ * Samples the origins of the input of NameCountByOrigin to partition it in total order.
+ *
+ * Random lines of a few splits spread over the input are read with the input format of the
+ * job (text or column files) and their origins are collected, with the same rules as the
+ * mapper (trimmed, '?' when blank). The sorted sample is cut into ranges of the same size and
+ * the first origin of each range is written to the partition file of TotalOrderPartitioner :
+ * reduce task i receives the origins between cut i-1 and cut i, so the part files are sorted
+ * one after another. Equal origins cannot be cut, so with few distinct origins the number of
+ * reduce tasks is lowered to the number of ranges.
+ *
+ * Options (see NameStatsConfig) : namestats.totalorder.sample.freq, namestats.totalorder.samples,
+ * namestats.totalorder.max.splits
+ *
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+
+
+public class NameOriginSampler {
+
+    private final static byte[] unknown = {'?'};
+
+    private final Configuration conf;
+    private final Random random = new Random();
+    private final NameRecordParser parser = new NameRecordParser();
+    private final List<Text> samples = new ArrayList<Text>();
+    private final int maxSamples;
+    private double freq;
+
+    private NameOriginSampler(Configuration conf) {
+        this.conf       = conf;
+        this.freq       = NameStatsConfig.totalOrderSampleFreq(conf);
+        this.maxSamples = NameStatsConfig.totalOrderSamples(conf);
+    }
+
+
+    // Samples the input of the job, writes the partition file and sets TotalOrderPartitioner.
+    // Returns the number of reduce tasks of the job (at most the number requested).
+    public static int writePartitionFile(Job job, Path file) throws IOException, InterruptedException, ClassNotFoundException {
+        Configuration conf = job.getConfiguration();
+        List<Text> cuts = cutPoints(sample(job), job.getNumReduceTasks());
+
+        SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(file),
+                SequenceFile.Writer.keyClass(Text.class),
+                SequenceFile.Writer.valueClass(NullWritable.class));
+        try {
+            for (Text cut : cuts) {
+                writer.append(cut, NullWritable.get());
+            }
+        } finally {
+            writer.close();
+        }
+
+        job.setNumReduceTasks(cuts.size() + 1);
+        job.setPartitionerClass(TotalOrderPartitioner.class);
+        TotalOrderPartitioner.setPartitionFile(conf, file);
+        return cuts.size() + 1;
+    }
+
+
+    // First origin of each range but the first one, ranges hold about the same number of samples
+    static List<Text> cutPoints(List<Text> samples, int partitions) {
+        List<Text> cuts = new ArrayList<Text>();
+        if (samples.isEmpty()) {
+            return cuts;
+        }
+        Collections.sort(samples);
+        int size = samples.size();
+        Text last = samples.get(0);
+        int k = 0;
+        for (int i = 1; i < partitions; i++) {
+            // Skip the origins equal to the previous cut, they stay in the previous range
+            k = Math.max(k + 1, Math.round((float) size * i / partitions));
+            while (k < size && samples.get(k).compareTo(last) <= 0) {
+                k++;
+            }
+            if (k == size) {
+                break;
+            }
+            last = samples.get(k);
+            cuts.add(last);
+        }
+        return cuts;
+    }
+
+
+    // Random origins of the input of the job (unsorted, at most namestats.totalorder.samples)
+    public static List<Text> sample(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        NameOriginSampler sampler = new NameOriginSampler(job.getConfiguration());
+        sampler.read(job);
+        return sampler.samples;
+    }
+
+    // Reads the sampled splits : each origin is kept with probability freq, and once the sample is full
+    // it replaces a random one (freq decreases so that every origin read has the same chance to stay)
+    private void read(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        InputFormat<?, ?> format = ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+        List<InputSplit> splits = format.getSplits(job);
+        int sampled = Math.min(splits.size(), NameStatsConfig.totalOrderMaxSplits(conf));
+
+        for (int i = 0; i < sampled; i++) {
+            // Splits spread over the input rather than the first ones
+            InputSplit split = splits.get(i * splits.size() / sampled);
+            TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+            RecordReader<?, ?> reader = format.createRecordReader(split, context);
+            try {
+                reader.initialize(split, context);
+                while (reader.nextKeyValue()) {
+                    Object value = reader.getCurrentValue();
+                    if (value instanceof NameColumnRecord) {
+                        NameColumnRecord record = (NameColumnRecord) value;
+                        for (int j = 0; j < record.getOriginSize(); j++) {
+                            Text origin = record.getOrigin(j);
+                            offer(origin.getBytes(), 0, origin.getLength());
+                        }
+                    } else {
+                        offerOrigins((Text) value);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    // Origins of a text line, malformed lines have none
+    private void offerOrigins(Text line) {
+        if (!parser.parse(line)) {
+            return;
+        }
+        parser.tokenize(NameRecordParser.ORIGINS);
+        while (parser.nextToken()) {
+            parser.trimToken();
+            if (parser.tokenLength() > 0) {
+                offer(parser.getBytes(), parser.tokenStart(), parser.tokenLength());
+            } else {
+                offer(unknown, 0, unknown.length);
+            }
+        }
+    }
+
+    private void offer(byte[] bytes, int start, int length) {
+        if (random.nextDouble() > freq) {
+            return;
+        }
+        Text origin = new Text();
+        origin.set(bytes, start, length);
+        if (samples.size() < maxSamples) {
+            samples.add(origin);
+        } else {
+            samples.set(random.nextInt(maxSamples), origin);
+            freq *= (maxSamples - 1) / (double) maxSamples;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Byte level parser of a line of the name file : name;gender(s);origin(s);...
+ *
+ * The parser walks the raw buffer of the Text given by the record reader
+ * instead of decoding it into a String and splitting it with regex.
+ * Nothing is allocated per line : field and token boundaries are offsets
+ * into the buffer and tokens are copied straight into a reused Text.
+ * Separators ';' and ',' are ASCII, so they can never be part of a
+ * multi-byte UTF-8 character and splitting the bytes is safe.
+ *
+ * Tokens follow exactly the rules of String.split(",") used before :
+ * - a field without ',' is a single token, even if it is empty
+ * - empty tokens at the end of a field are dropped (",," gives no token)
+ * A line has a field i only if line.split(";") would have an index i,
+ * that is if a non empty field exists at index i or after (see hasField()).
+ *
+ * Usage :
+ *  if (parser.parse(value)) {
+ *      parser.tokenize(NameRecordParser.ORIGINS);
+ *      while (parser.nextToken()) { parser.trimToken(); parser.copyToken(text); }
+ *  }
+ *
+ */
+
+import org.apache.hadoop.io.Text;
+
+
+public class NameRecordParser {
+
+    // Index of the fields in a line
+    public static final int NAME    = 0;
+    public static final int GENDERS = 1;
+    public static final int ORIGINS = 2;
+
+    private static final int FIELDS = 3;
+    private static final byte FIELD_SEPARATOR = ';';
+    private static final byte TOKEN_SEPARATOR = ',';
+
+    // Current line
+    private byte[] bytes;
+    private int length;
+
+    // Boundaries [start, end) of the first fields and number of fields found
+    private final int[] fieldStarts = new int[FIELDS];
+    private final int[] fieldEnds   = new int[FIELDS];
+    private int fieldCount;
+
+    // Current tokenization : position of the next token and end of the field
+    private int cursor;
+    private int limit;
+    private boolean hasMoreTokens;
+
+    // Current token [tokenStart, tokenEnd)
+    private int tokenStart;
+    private int tokenEnd;
+
+
+    // Find the boundaries of the first fields, return false if the line has no origin field
+    public boolean parse(Text line) {
+        return parse(line.getBytes(), 0, line.getLength());
+    }
+
+
+    public boolean parse(byte[] buffer, int start, int end) {
+        this.bytes  = buffer;
+        this.length = end;
+        this.fieldCount = 0;
+        this.hasMoreTokens = false;
+
+        int fieldStart = start;
+        int position   = start;
+        while (fieldCount < FIELDS) {
+            while (position < end && buffer[position] != FIELD_SEPARATOR) {
+                position++;
+            }
+            fieldStarts[fieldCount] = fieldStart;
+            fieldEnds[fieldCount]   = position;
+            fieldCount++;
+            if (position == end) {
+                break;
+            }
+            position++;
+            fieldStart = position;
+        }
+
+        return hasField(ORIGINS);
+    }
+
+
+    // Would line.split(";") have an index field ? (trailing empty fields are dropped by split)
+    public boolean hasField(int field) {
+        if (field >= fieldCount) {
+            return false;
+        }
+        if (field == 0) {
+            return true;
+        }
+        for (int i = fieldStarts[field]; i < length; i++) {
+            if (bytes[i] != FIELD_SEPARATOR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    public int fieldStart(int field) {
+        return fieldStarts[field];
+    }
+
+
+    public int fieldEnd(int field) {
+        return fieldEnds[field];
+    }
+
+
+    // Start iterating over the ',' separated tokens of a field
+    public void tokenize(int field) {
+        int start = fieldStarts[field];
+        int end   = fieldEnds[field];
+
+        boolean hasSeparator = false;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == TOKEN_SEPARATOR) {
+                hasSeparator = true;
+                break;
+            }
+        }
+        // Trailing empty tokens are dropped, a field of separators only has no token
+        if (hasSeparator) {
+            while (end > start && bytes[end - 1] == TOKEN_SEPARATOR) {
+                end--;
+            }
+        }
+        this.cursor = start;
+        this.limit  = end;
+        this.hasMoreTokens = !hasSeparator || end > start;
+    }
+
+
+    // Move to the next token of the field, return false when there is none left
+    public boolean nextToken() {
+        if (!hasMoreTokens) {
+            return false;
+        }
+        int position = cursor;
+        while (position < limit && bytes[position] != TOKEN_SEPARATOR) {
+            position++;
+        }
+        tokenStart = cursor;
+        tokenEnd   = position;
+        if (position < limit) {
+            cursor = position + 1;
+        } else {
+            hasMoreTokens = false;
+        }
+        return true;
+    }
+
+
+    // Remove leading and trailing white spaces (same bytes as String.trim())
+    public void trimToken() {
+        while (tokenStart < tokenEnd && (bytes[tokenStart] & 0xff) <= ' ') {
+            tokenStart++;
+        }
+        while (tokenEnd > tokenStart && (bytes[tokenEnd - 1] & 0xff) <= ' ') {
+            tokenEnd--;
+        }
+    }
+
+
+    public int tokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+
+    // Is the token the single character c ?
+    public boolean tokenIs(char c) {
+        return tokenEnd - tokenStart == 1 && bytes[tokenStart] == (byte) c;
+    }
+
+
+    // Copy the token into a reused Text
+    public void copyToken(Text text) {
+        text.set(bytes, tokenStart, tokenEnd - tokenStart);
+    }
+
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+
+    public int getLength() {
+        return length;
+    }
+
+
+    public int tokenStart() {
+        return tokenStart;
+    }
+
+
+    public int tokenEnd() {
+        return tokenEnd;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * End to end scaling benchmark of the name statistics jobs on synthetic files.
+ *
+ * For each size of namestats.scaling.sizes (default 100m,1g,10g), a file is written with
+ * NameDataGenerator (options namestats.generator.*, the size replaces the number of lines)
+ * into work/path/input-<size>, unless it is already there. Each job of namestats.scaling.jobs
+ * (default the three jobs) is then run on it inside this JVM, with the Hadoop local runner
+ * or with LocalEngine when namestats.engine=embedded, and the benchmark records :
+ * - the wall time of the job
+ * - the shuffle bytes (counter REDUCE_SHUFFLE_BYTES)
+ * - the time and number of garbage collections of the JVM during the job
+ * Results are printed and appended to work/path/results.tsv.
+ *
+ * Usage : hadoop jar 'jar file' NameScalingBenchmark -D namestats.scaling.sizes=100m,1g work/path
+ *
+ */
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.StringUtils;
+
+
+public class NameScalingBenchmark {
+
+    private static final String HEADER = "size\tbytes\tjob\tengine\twall_ms\tshuffle_bytes\tgc_ms\tgc_count\n";
+
+    // Job of a driver by its class name
+    private static Job createJob(String name, Configuration conf, Path input, Path output) throws IOException {
+        if (name.equals("NameCountByOrigin")) {
+            return NameCountByOrigin.createJob(conf, input, output);
+        } else if (name.equals("NameCountByOriginCount")) {
+            return NameCountByOriginCount.createJob(conf, input, output);
+        } else if (name.equals("NameGenderProp")) {
+            return NameGenderProp.createJob(conf, input, output);
+        }
+        throw new IllegalArgumentException("Unknown job " + name);
+    }
+
+    // Time (ms) and number of the garbage collections of the JVM so far
+    private static long[] gc() {
+        long[] gc = new long[2];
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gc[0] += Math.max(0, bean.getCollectionTime());
+            gc[1] += Math.max(0, bean.getCollectionCount());
+        }
+        return gc;
+    }
+
+
+    // Results are kept from run to run, so that runs with other options can be compared
+    // (the file is rewritten since the local file system cannot append)
+    private static void appendResult(FileSystem fs, Path results, String line) throws IOException {
+        String previous = HEADER;
+        if (fs.exists(results)) {
+            byte[] bytes = new byte[(int) fs.getFileStatus(results).getLen()];
+            FSDataInputStream in = fs.open(results);
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            previous = new String(bytes, "UTF-8");
+        }
+        Writer writer = new OutputStreamWriter(fs.create(results, true), "UTF-8");
+        try {
+            writer.write(previous + line);
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, the path remains
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 1) {
+            System.err.printf("One path argument is needed.\n");
+            return;
+        }
+
+        // Jobs run in this JVM so that its garbage collections are theirs
+        conf.set(MRConfig.FRAMEWORK_NAME, MRConfig.LOCAL_FRAMEWORK_NAME);
+        String engine = NameStatsConfig.embeddedEngine(conf) ? "embedded" : "local";
+
+        Path work = new Path(paths[0]);
+        FileSystem fs = work.getFileSystem(conf);
+        Path results = new Path(work, "results.tsv");
+        StringBuilder lines = new StringBuilder();
+
+        for (String size : StringUtils.getTrimmedStrings(conf.get(NameStatsConfig.SCALING_SIZES, NameStatsConfig.DEFAULT_SCALING_SIZES))) {
+            long bytes = StringUtils.TraditionalBinaryPrefix.string2long(size);
+
+            // The input of a size is generated once and reused by the next runs
+            Path input = new Path(work, "input-" + size);
+            if (!fs.exists(input)) {
+                Configuration generator = new Configuration(conf);
+                generator.setLong(NameStatsConfig.GENERATOR_BYTES, bytes);
+                long rows = NameDataGenerator.generate(generator, new Path(input, "names.csv"));
+                System.out.printf("Generated %s : %d lines\n", input, rows);
+            }
+            long inputBytes = fs.getContentSummary(input).getLength();
+
+            for (String name : StringUtils.getTrimmedStrings(conf.get(NameStatsConfig.SCALING_JOBS, NameStatsConfig.DEFAULT_SCALING_JOBS))) {
+                Path output = new Path(work, "output-" + size + "-" + name);
+                fs.delete(output, true);
+                Job job = createJob(name, conf, input, output);
+
+                // Garbage of the previous runs is not counted
+                System.gc();
+                long[] gcBefore = gc();
+                long start = System.nanoTime();
+                Counters counters = LocalEngine.runJobForCounters(job);
+                long wall = (System.nanoTime() - start) / 1000000;
+                long[] gcAfter = gc();
+                if (counters == null) {
+                    throw new IOException("Job " + name + " failed on " + input);
+                }
+
+                String line = String.format("%s\t%d\t%s\t%s\t%d\t%d\t%d\t%d\n", size, inputBytes, name, engine, wall,
+                        counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).getValue(),
+                        gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+                lines.append(line);
+                System.out.print(HEADER + line);
+                appendResult(fs, results, line);
+                fs.delete(output, true);
+            }
+        }
+        System.out.print("\n" + HEADER + lines);
+    }
+}
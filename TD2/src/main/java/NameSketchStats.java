@@ -0,0 +1,258 @@
+/**
+ * This Map/Reduce job computes approximate name statistics in one pass and in a fixed memory :
+ * - origin frequencies with a Count-Min sketch
+ * - most frequent origins with a Space-Saving summary
+ * - distinct names per gender with two HyperLogLog sketches
+ *
+ * Each map task fills its own sketches and writes them once, in cleanup, so the
+ * shuffle only carries four small records per task. The single reducer merges the
+ * sketches of all tasks (their memory does not depend on the input size) and writes
+ * the results in output/path/part-r-00000 together with their error bounds.
+ * The merged sketches are also saved in output/path/sketches-r-00000 (SequenceFile
+ * of Text -> SketchWritable) so that other origins can be estimated later.
+ * Sketch sizes are options, see NameStatsConfig.
+ *
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameSketchStats {
+
+    // Keys of the sketches
+    public static final String COUNT_MIN        = "countmin";
+    public static final String TOP_ORIGINS      = "topk";
+    public static final String DISTINCT_FEMALE  = "distinct-f";
+    public static final String DISTINCT_MALE    = "distinct-m";
+
+    // Named output of the merged sketches
+    public static final String SKETCHES_OUTPUT  = "sketches";
+
+
+    public static class Map extends Mapper<LongWritable, Text, Text, SketchWritable> {
+
+        private final static byte[] unknown = {'?'};
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+
+        // Sketches of the task
+        private CountMinSketch origins;
+        private SpaceSaving topOrigins;
+        private HyperLogLog femaleNames;
+        private HyperLogLog maleNames;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            records     = new InputRecords(context);
+            origins     = NameStatsConfig.newCountMinSketch(conf);
+            topOrigins  = NameStatsConfig.newSpaceSaving(conf);
+            femaleNames = NameStatsConfig.newHyperLogLog(conf);
+            maleNames   = NameStatsConfig.newHyperLogLog(conf);
+        }
+
+        // Mapper : the line only updates the sketches, nothing is written here
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+
+            // A line without origin field is skipped
+            if (!parser.parse(value)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+
+            // Distinct names : the trimmed name is hashed into the sketch of each of its genders
+            long nameHash = nameHash();
+            parser.tokenize(NameRecordParser.GENDERS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenIs('f')) {
+                    records.tokenEmitted();
+                    femaleNames.add(nameHash);
+                } else if (parser.tokenIs('m')) {
+                    records.tokenEmitted();
+                    maleNames.add(nameHash);
+                }
+            }
+
+            // Origins : trimmed origin, blank means unknown origin '?' (same rule as NameCountByOrigin)
+            parser.tokenize(NameRecordParser.ORIGINS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenLength() == 0 || parser.tokenIs('?')) {
+                    records.unknownOrigin();
+                }
+                if (parser.tokenLength() > 0) {
+                    addOrigin(parser.getBytes(), parser.tokenStart(), parser.tokenLength());
+                } else {
+                    addOrigin(unknown, 0, unknown.length);
+                }
+            }
+        }
+
+        private void addOrigin(byte[] bytes, int start, int length) {
+            records.tokenEmitted();
+            origins.add(bytes, start, length, 1);
+            topOrigins.add(bytes, start, length, 1);
+        }
+
+        // Same hash of the trimmed name as the exact distinct mode of NameGenderProp
+        private long nameHash() {
+            return NameGenderKey.fingerprint(parser.getBytes(),
+                    parser.fieldStart(NameRecordParser.NAME), parser.fieldEnd(NameRecordParser.NAME));
+        }
+
+        // The sketches of the task are written once
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            context.write(new Text(COUNT_MIN), new SketchWritable(origins));
+            context.write(new Text(TOP_ORIGINS), new SketchWritable(topOrigins));
+            context.write(new Text(DISTINCT_FEMALE), new SketchWritable(femaleNames));
+            context.write(new Text(DISTINCT_MALE), new SketchWritable(maleNames));
+            records.close();
+        }
+    }
+
+    public static class Reduce extends Reducer<Text, SketchWritable, NullWritable, Text> {
+
+        private MultipleOutputs<NullWritable, Text> outputs;
+        private CountMinSketch origins;
+        private SpaceSaving topOrigins;
+        private HyperLogLog femaleNames;
+        private HyperLogLog maleNames;
+
+        @Override
+        protected void setup(Context context) {
+            outputs = new MultipleOutputs<NullWritable, Text>(context);
+        }
+
+        // Reducer : the sketches of all map tasks are merged, results are written in cleanup
+        public void reduce(Text key, Iterable<SketchWritable> values, Context context) throws IOException, InterruptedException {
+            for (SketchWritable value : values) {
+                // GenericWritable creates a new sketch for each value, it can be kept
+                Writable sketch = value.get();
+                if (sketch instanceof CountMinSketch) {
+                    if (origins == null) origins = (CountMinSketch) sketch; else origins.merge((CountMinSketch) sketch);
+                } else if (sketch instanceof SpaceSaving) {
+                    if (topOrigins == null) topOrigins = (SpaceSaving) sketch; else topOrigins.merge((SpaceSaving) sketch);
+                } else if (key.toString().equals(DISTINCT_FEMALE)) {
+                    if (femaleNames == null) femaleNames = (HyperLogLog) sketch; else femaleNames.merge((HyperLogLog) sketch);
+                } else {
+                    if (maleNames == null) maleNames = (HyperLogLog) sketch; else maleNames.merge((HyperLogLog) sketch);
+                }
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (origins != null) {
+                writeResults(context);
+                outputs.write(SKETCHES_OUTPUT, new Text(COUNT_MIN), new SketchWritable(origins));
+                outputs.write(SKETCHES_OUTPUT, new Text(TOP_ORIGINS), new SketchWritable(topOrigins));
+                outputs.write(SKETCHES_OUTPUT, new Text(DISTINCT_FEMALE), new SketchWritable(femaleNames));
+                outputs.write(SKETCHES_OUTPUT, new Text(DISTINCT_MALE), new SketchWritable(maleNames));
+            }
+            outputs.close();
+        }
+
+        private void writeResults(Context context) throws IOException, InterruptedException {
+            long total = origins.getTotal();
+            long cmsError = (long) Math.ceil(origins.getEpsilon() * total);
+            write(context, "# %d origin occurrences (N)", total);
+
+            // Top origins : the true count is between the Space-Saving lower bound and the smallest
+            // of the two estimates, which both never underestimate
+            int k = NameStatsConfig.sketchTopK(context.getConfiguration());
+            write(context, "# top %d origins : origin, estimate, [lower bound, upper bound] (Space-Saving of %d counters, exact bounds)",
+                    k, topOrigins.getCapacity());
+            List<Entry<Text, long[]>> top = topOrigins.top(topOrigins.getCapacity());
+            for (Entry<Text, long[]> entry : top.subList(0, Math.min(k, top.size()))) {
+                long count = entry.getValue()[0];
+                long error = entry.getValue()[1];
+                long upper = Math.min(count, origins.estimate(entry.getKey()));
+                write(context, "top\t%s\t%d\t[%d, %d]", entry.getKey(), upper, count - error, upper);
+            }
+
+            // Origin frequencies : Count-Min estimates of every origin kept by the summary
+            write(context, "# origin frequencies : origin, estimate (Count-Min %d x %d, overestimates by at most %d = %.5f * N with probability %.4f)",
+                    origins.getWidth(), origins.getDepth(), cmsError, origins.getEpsilon(), 1 - origins.getDelta());
+            TreeMap<Text, Long> frequencies = new TreeMap<Text, Long>();
+            for (Entry<Text, long[]> entry : top) {
+                frequencies.put(entry.getKey(), origins.estimate(entry.getKey()));
+            }
+            for (Entry<Text, Long> entry : frequencies.entrySet()) {
+                write(context, "origin\t%s\t%d", entry.getKey(), entry.getValue());
+            }
+
+            // Distinct names : HyperLogLog estimates with their relative standard error
+            write(context, "# distinct names per gender : gender, estimate, relative standard error (HyperLogLog)");
+            writeDistinct(context, "Female Name", femaleNames);
+            writeDistinct(context, "Male Name", maleNames);
+        }
+
+        private void writeDistinct(Context context, String gender, HyperLogLog names) throws IOException, InterruptedException {
+            write(context, "distinct\t%s\t%d\t+- %.2f%%", gender, names.estimate(), 100 * names.getStandardError());
+        }
+
+        private void write(Context context, String format, Object... args) throws IOException, InterruptedException {
+            context.write(NullWritable.get(), new Text(String.format(format, args)));
+        }
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            Job job = Job.getInstance(conf);
+            job.setJarByClass(NameSketchStats.class);
+
+            job.setJobName("Name Statistics - Sketches");
+
+            job.setMapOutputKeyClass(Text.class);
+            job.setMapOutputValueClass(SketchWritable.class);
+            job.setOutputKeyClass(NullWritable.class);
+            job.setOutputValueClass(Text.class);
+
+            job.setMapperClass(Map.class);
+            job.setReducerClass(Reduce.class);
+            // Sketches are merged by a single reducer, its memory is the size of the sketches
+            job.setNumReduceTasks(1);
+
+            NameTextInput.setInputFormat(job);
+            job.setOutputFormatClass(TextOutputFormat.class);
+            InputRecords.addNamedOutput(job);
+            MultipleOutputs.addNamedOutput(job, SKETCHES_OUTPUT, SequenceFileOutputFormat.class, Text.class, SketchWritable.class);
+
+            FileInputFormat.addInputPath(job, new Path(paths[0]));
+            FileOutputFormat.setOutputPath(job, new Path(paths[1]));
+
+            LocalEngine.runJob(job);
+        }
+    }
+}
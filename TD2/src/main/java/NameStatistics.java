@@ -0,0 +1,249 @@
+/**
+ * This Map/Reduce job computes the three name statistics in a single pass :
+ * - name count by origin (same result as NameCountByOrigin)
+ * - name count by origin count (same result as NameCountByOriginCount)
+ * - name gender proportion (same result as NameGenderProp)
+ *
+ * Each line is read and parsed only once. The mapper writes every statistic
+ * with a TaggedKey whose tag says which statistic it belongs to, and the reducer
+ * writes each statistic into its own named output with MultipleOutputs :
+ * output/path/origin-r-xxxxx, output/path/origincount-r-xxxxx and output/path/genderprop-r-xxxxx
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameStatistics {
+
+    // Tags of the statistics
+    public static final byte ORIGIN         = 0;
+    public static final byte ORIGIN_COUNT   = 1;
+    public static final byte GENDER         = 2;
+
+    // Named outputs (one per statistic)
+    public static final String ORIGIN_OUTPUT        = "origin";
+    public static final String ORIGIN_COUNT_OUTPUT  = "origincount";
+    public static final String GENDER_OUTPUT        = "genderprop";
+
+
+    public static class Map extends Mapper<LongWritable, Text, TaggedKey, SumCountWritable> {
+
+        // Mapper : keys are (tag, origin), (tag, origin count) or (tag, gender)
+        // and values are partial aggregates (1,1) or (0,1), see SumCountWritable
+        private final static SumCountWritable one = new SumCountWritable(1, 1);
+        private final static SumCountWritable zero = new SumCountWritable(0, 1);
+        private final static Text unknown = new Text("?");
+        private final static TaggedKey female = new TaggedKey(GENDER, "Female Name");
+        private final static TaggedKey male = new TaggedKey(GENDER, "Male Name");
+        private TaggedKey origin = new TaggedKey();
+        private TaggedKey originCount = new TaggedKey();
+        private byte[] countBytes = new byte[4];
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+
+            // The line is parsed once for the three statistics, a line without origin field is skipped
+            if (!parser.parse(value)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+
+            // Origins : one (origin, 1) pair per origin, and the number of origins of the name
+            origin.setTag(ORIGIN);
+            parser.tokenize(NameRecordParser.ORIGINS);
+            int count = 0;
+            while (parser.nextToken()) {
+
+                // Origin count uses the untrimmed token, like NameCountByOriginCount
+                if (parser.tokenIs('?')) {
+                    count = 0;
+                } else if (parser.tokenLength() > 0) {
+                    count += 1;
+                }
+
+                // Origin uses the trimmed token, blank means unknown origin '?'
+                parser.trimToken();
+                if (parser.tokenLength() > 0) {
+                    parser.copyToken(origin.getText());
+                } else {
+                    origin.getText().set(unknown);
+                }
+                if (parser.tokenLength() == 0 || parser.tokenIs('?')) {
+                    records.unknownOrigin();
+                }
+                records.tokenEmitted();
+                context.write(origin, one);
+            }
+
+            // The count is stored big endian so that keys sort in numeric order
+            encodeCount(count);
+            originCount.setTag(ORIGIN_COUNT);
+            originCount.getText().set(countBytes);
+            context.write(originCount, one);
+
+            // Genders : ('f',(1,1)) and ('m',(0,1)) for a female name, ('m',(1,1)) and ('f',(0,1)) for a male name
+            parser.tokenize(NameRecordParser.GENDERS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenIs('f')) {
+                    records.tokenEmitted();
+                    context.write(female, one);
+                    context.write(male, zero);
+                } else if (parser.tokenIs('m')) {
+                    records.tokenEmitted();
+                    context.write(male, one);
+                    context.write(female, zero);
+                }
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            records.close();
+        }
+
+        private void encodeCount(int count) {
+            countBytes[0] = (byte) (count >>> 24);
+            countBytes[1] = (byte) (count >>> 16);
+            countBytes[2] = (byte) (count >>> 8);
+            countBytes[3] = (byte) count;
+        }
+    }
+
+    public static class Combine extends Reducer<TaggedKey, SumCountWritable, TaggedKey, SumCountWritable> {
+
+        private SumCountWritable partial = new SumCountWritable();
+
+        // Combiner : partial aggregates of a key are merged, whatever the statistic
+        public void reduce(TaggedKey key, Iterable<SumCountWritable> values, Context context) throws IOException, InterruptedException {
+            partial.set(0, 0);
+            for (SumCountWritable val : values) {
+                partial.add(val);
+            }
+            context.write(key, partial);
+        }
+    }
+
+    public static class Reduce<KEYOUT, VALUEOUT> extends Reducer<TaggedKey, SumCountWritable, KEYOUT, VALUEOUT> {
+
+        private MultipleOutputs<KEYOUT, VALUEOUT> outputs;
+        private IntWritable originCount = new IntWritable();
+        protected SumCountWritable total = new SumCountWritable();
+
+        @Override
+        protected void setup(Context context) {
+            outputs = new MultipleOutputs<KEYOUT, VALUEOUT>(context);
+        }
+
+        // Reducer : the tag of the key tells which statistic is computed and where it is written
+        public void reduce(TaggedKey key, Iterable<SumCountWritable> values, Context context) throws IOException, InterruptedException {
+            merge(values);
+            writeStatistic(key);
+        }
+
+        // We sum the values and count them (the count is only needed for gender proportion)
+        protected void merge(Iterable<SumCountWritable> values) {
+            total.set(0, 0);
+            for (SumCountWritable val : values) {
+                total.add(val);
+            }
+        }
+
+        // Write the merged total of the key into the named output of its statistic
+        protected void writeStatistic(TaggedKey key) throws IOException, InterruptedException {
+            switch (key.getTag()) {
+                case ORIGIN:
+                    outputs.write(ORIGIN_OUTPUT, key.getText(), new IntWritable((int) total.getSum()));
+                    break;
+                case ORIGIN_COUNT:
+                    originCount.set(decodeCount(key.getText()));
+                    outputs.write(ORIGIN_COUNT_OUTPUT, originCount, new IntWritable((int) total.getSum()));
+                    break;
+                case GENDER:
+                    float proportion = 100 * (float)total.getSum() / (float)total.getCount() ;
+                    outputs.write(GENDER_OUTPUT, key.getText(), new FloatWritable(proportion));
+                    break;
+                default:
+                    throw new IOException("Unknown statistic tag " + key.getTag());
+            }
+        }
+
+        private int decodeCount(Text text) {
+            byte[] bytes = text.getBytes();
+            return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            outputs.close();
+        }
+    }
+
+    // Named outputs of the three statistics and of the malformed lines
+    public static void addNamedOutputs(Job job) {
+        InputRecords.addNamedOutput(job);
+        MultipleOutputs.addNamedOutput(job, ORIGIN_OUTPUT, TextOutputFormat.class, Text.class, IntWritable.class);
+        MultipleOutputs.addNamedOutput(job, ORIGIN_COUNT_OUTPUT, TextOutputFormat.class, IntWritable.class, IntWritable.class);
+        MultipleOutputs.addNamedOutput(job, GENDER_OUTPUT, TextOutputFormat.class, Text.class, FloatWritable.class);
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            Job job = Job.getInstance(conf);
+            job.setJarByClass(NameStatistics.class);
+
+            job.setJobName("Name Statistics - Single Pass");
+
+            job.setMapOutputKeyClass(TaggedKey.class);
+            job.setMapOutputValueClass(SumCountWritable.class);
+
+            job.setMapperClass(Map.class);
+            job.setCombinerClass(Combine.class);
+            job.setReducerClass(Reduce.class);
+
+            NameTextInput.setInputFormat(job);
+            // Only named outputs are written, no empty part-r-xxxxx files
+            LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+
+            addNamedOutputs(job);
+
+            FileInputFormat.addInputPath(job, new Path(paths[0]));
+            FileOutputFormat.setOutputPath(job, new Path(paths[1]));
+
+            LocalEngine.runJob(job);
+        }
+    }
+}
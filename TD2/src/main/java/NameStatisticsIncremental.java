@@ -0,0 +1,194 @@
+/**
+ * Incremental version of NameStatistics for an input directory receiving new name files.
+ *
+ * The aggregate state of the previous runs is kept in state/path/current :
+ * - part-r-xxxxx : aggregate state (SequenceFile of TaggedKey -> SumCountWritable)
+ * - origin-r-xxxxx, origincount-r-xxxxx, genderprop-r-xxxxx : readable statistics
+ * - _manifest : input files already processed, one per line
+ *
+ * Each run only reads the input files missing from the manifest. One job maps the new
+ * files with NameStatistics.Map and the previous state with an identity mapper, the
+ * reducer merges the partial aggregates and writes the new state and statistics.
+ * Origin counts, origin count histogram and gender (sum, total) are all sums, so the
+ * result is the same as a NameStatistics run over all files, for a cost proportional
+ * to the new data. The new state and its manifest are written into a new directory
+ * which replaces the current one only if the job succeeds.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameStatisticsIncremental {
+
+    public static final String MANIFEST = "_manifest";
+    public static final String CURRENT  = "current";
+    public static final String PREVIOUS = "previous";
+
+    // Same filter as FileInputFormat
+    private static final PathFilter HIDDEN_FILTER = new PathFilter() {
+        public boolean accept(Path path) {
+            String name = path.getName();
+            return !name.startsWith("_") && !name.startsWith(".");
+        }
+    };
+
+
+    public static class Reduce extends NameStatistics.Reduce<TaggedKey, SumCountWritable> {
+
+        // Reducer : partial aggregates of the new files and of the previous state are merged,
+        // the total is written as new state and as readable statistic
+        public void reduce(TaggedKey key, Iterable<SumCountWritable> values, Context context) throws IOException, InterruptedException {
+            merge(values);
+            context.write(key, total);
+            writeStatistic(key);
+        }
+    }
+
+
+    // Read the input files already processed
+    private static TreeSet<String> readManifest(FileSystem fs, Path manifest) throws IOException {
+        TreeSet<String> processed = new TreeSet<String>();
+        if (fs.exists(manifest)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(manifest), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0) processed.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return processed;
+    }
+
+
+    private static void writeManifest(FileSystem fs, Path manifest, TreeSet<String> processed) throws IOException {
+        Writer writer = new OutputStreamWriter(fs.create(manifest, true), "UTF-8");
+        try {
+            for (String path : processed) {
+                writer.write(path);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    // Files of the input directory (or the input file itself) missing from the manifest
+    private static List<Path> newFiles(FileSystem fs, Path input, TreeSet<String> processed) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        for (FileStatus status : fs.listStatus(input, HIDDEN_FILTER)) {
+            Path path = fs.makeQualified(status.getPath());
+            if (status.isFile() && !processed.contains(path.toString())) {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed : input/path state/path\n");
+        }
+        else {
+            Path input = new Path(paths[0]);
+            Path stateDir = new Path(paths[1]);
+            FileSystem fs = stateDir.getFileSystem(conf);
+            Path current = new Path(stateDir, CURRENT);
+            Path previous = new Path(stateDir, PREVIOUS);
+
+            // A run stopped while replacing the state left it in previous
+            if (!fs.exists(current) && fs.exists(previous) && !fs.rename(previous, current)) {
+                throw new IOException("Cannot restore " + previous + " to " + current);
+            }
+
+            TreeSet<String> processed = readManifest(fs, new Path(current, MANIFEST));
+            List<Path> files = newFiles(input.getFileSystem(conf), input, processed);
+            if (files.isEmpty()) {
+                System.out.println("No new input file, statistics are up to date in " + current);
+                return;
+            }
+
+            Path next = new Path(stateDir, "next-" + System.currentTimeMillis());
+
+            Job job = Job.getInstance(conf);
+            job.setJarByClass(NameStatisticsIncremental.class);
+
+            job.setJobName("Name Statistics - Incremental (" + files.size() + " new files)");
+
+            job.setMapOutputKeyClass(TaggedKey.class);
+            job.setMapOutputValueClass(SumCountWritable.class);
+            job.setOutputKeyClass(TaggedKey.class);
+            job.setOutputValueClass(SumCountWritable.class);
+
+            // New files are parsed, the previous state is read as it is
+            for (Path file : files) {
+                MultipleInputs.addInputPath(job, file, NameTextInput.inputFormat(job), NameStatistics.Map.class);
+            }
+            if (fs.exists(current)) {
+                MultipleInputs.addInputPath(job, new Path(current, "part-*"), SequenceFileInputFormat.class, Mapper.class);
+            }
+
+            job.setCombinerClass(NameStatistics.Combine.class);
+            job.setReducerClass(Reduce.class);
+
+            // The state is the main output, the statistics are named outputs
+            LazyOutputFormat.setOutputFormatClass(job, SequenceFileOutputFormat.class);
+            NameStatistics.addNamedOutputs(job);
+            FileOutputFormat.setOutputPath(job, next);
+
+            if (!LocalEngine.runJob(job)) {
+                fs.delete(next, true);
+                System.err.printf("Incremental job failed, state is unchanged.\n");
+                return;
+            }
+
+            // The new files are recorded with the new state, which then replaces the current one
+            for (Path file : files) {
+                processed.add(file.toString());
+            }
+            writeManifest(fs, new Path(next, MANIFEST), processed);
+
+            fs.delete(previous, true);
+            if (fs.exists(current) && !fs.rename(current, previous)) {
+                throw new IOException("Cannot rename " + current + " to " + previous);
+            }
+            if (!fs.rename(next, current)) {
+                throw new IOException("Cannot rename " + next + " to " + current);
+            }
+            fs.delete(previous, true);
+            System.out.println(files.size() + " new files merged, statistics are in " + current);
+        }
+    }
+}
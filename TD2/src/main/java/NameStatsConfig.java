@@ -0,0 +1,207 @@
+/**
+ * Configuration keys shared by the name statistics jobs.
+ *
+ * Every option can be given on the command line of a driver with
+ * the generic Hadoop syntax, for instance :
+ * hadoop jar 'jar file' NameCountByOrigin -D namestats.inmapper.combine=true input/path output/path
+ *
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+
+
+public final class NameStatsConfig {
+
+    // In-mapper combining : counts are aggregated inside the map task before being written
+    public static final String INMAPPER_COMBINE             = "namestats.inmapper.combine";
+    public static final boolean DEFAULT_INMAPPER_COMBINE    = false;
+
+    // Memory (in bytes) the in-mapper table may use before it is flushed to the context
+    public static final String INMAPPER_MAX_BYTES           = "namestats.inmapper.max.bytes";
+    public static final int DEFAULT_INMAPPER_MAX_BYTES      = 8 * 1024 * 1024;
+
+    // Origin dictionary file of NameCountByOriginEncoded (built by a first pass when not set)
+    public static final String ORIGIN_DICTIONARY            = "namestats.origin.dictionary";
+
+    // Engine running the jobs : "cluster" (job submission) or "embedded" (LocalEngine, in this JVM)
+    public static final String ENGINE                       = "namestats.engine";
+    public static final String DEFAULT_ENGINE               = "cluster";
+
+    // Threads and split size of the embedded engine
+    public static final String EMBEDDED_THREADS             = "namestats.embedded.threads";
+    public static final String EMBEDDED_SPLIT_BYTES         = "namestats.embedded.split.bytes";
+    public static final long DEFAULT_EMBEDDED_SPLIT_BYTES   = 32 * 1024 * 1024;
+
+    // Columnar input : jobs read files written by NameColumnConverter instead of text
+    public static final String COLUMNAR_INPUT               = "namestats.input.columnar";
+    public static final boolean DEFAULT_COLUMNAR_INPUT      = false;
+
+    // Rows per block of the columnar files written by NameColumnConverter
+    public static final String COLUMNAR_BLOCK_ROWS          = "namestats.columnar.block.rows";
+    public static final int DEFAULT_COLUMNAR_BLOCK_ROWS     = 8192;
+
+    // Columns read by NameColumnInputFormat (comma separated names, all columns when not set)
+    public static final String COLUMNAR_COLUMNS             = "namestats.columnar.columns";
+
+    // Gender proportions of NameGenderProp over distinct names instead of lines
+    public static final String GENDERPROP_DISTINCT          = "namestats.genderprop.distinct";
+    public static final boolean DEFAULT_GENDERPROP_DISTINCT = false;
+
+    // Small files packed into combined splits of the given size (see NameTextInput)
+    public static final String COMBINE_INPUT                = "namestats.input.combine";
+    public static final boolean DEFAULT_COMBINE_INPUT       = false;
+    public static final String COMBINE_SPLIT_BYTES          = "namestats.input.combine.split.bytes";
+    public static final long DEFAULT_COMBINE_SPLIT_BYTES    = 128 * 1024 * 1024;
+
+    // Number of origins written by NameTopOrigins
+    public static final String TOPK                         = "namestats.topk";
+    public static final int DEFAULT_TOPK                    = 10;
+
+    // Local leaders each map task of NameTopOrigins sends (4 * topk when not set)
+    public static final String TOPK_CANDIDATES              = "namestats.topk.candidates";
+
+    // Total order output of NameCountByOrigin : sampled origins partition the keys between the reduce tasks
+    public static final String TOTAL_ORDER                  = "namestats.totalorder";
+    public static final boolean DEFAULT_TOTAL_ORDER         = false;
+    public static final String TOTAL_ORDER_SAMPLE_FREQ      = "namestats.totalorder.sample.freq";
+    public static final float DEFAULT_TOTAL_ORDER_SAMPLE_FREQ = 0.01f;
+    public static final String TOTAL_ORDER_SAMPLES          = "namestats.totalorder.samples";
+    public static final int DEFAULT_TOTAL_ORDER_SAMPLES     = 10000;
+    public static final String TOTAL_ORDER_MAX_SPLITS       = "namestats.totalorder.max.splits";
+    public static final int DEFAULT_TOTAL_ORDER_MAX_SPLITS  = 10;
+
+    // Hot keys of NameCountByOrigin salted over several reduce tasks (see HotKeySalting) :
+    // comma separated keys, detection from a sample, number of sub-keys (number of reduce tasks when not set)
+    public static final String SALT_KEYS                    = "namestats.salt.keys";
+    public static final String SALT_DETECT                  = "namestats.salt.detect";
+    public static final boolean DEFAULT_SALT_DETECT         = false;
+    public static final String SALT_BUCKETS                 = "namestats.salt.buckets";
+
+    // Synthetic name files of NameDataGenerator (see its comment for the meaning of each option)
+    public static final String GENERATOR_ROWS               = "namestats.generator.rows";
+    public static final long DEFAULT_GENERATOR_ROWS         = 1000000;
+    public static final String GENERATOR_BYTES              = "namestats.generator.bytes";
+    public static final String GENERATOR_ORIGINS            = "namestats.generator.origins";
+    public static final int DEFAULT_GENERATOR_ORIGINS       = 100;
+    public static final String GENERATOR_ZIPF               = "namestats.generator.zipf";
+    public static final double DEFAULT_GENERATOR_ZIPF       = 1.0;
+    public static final String GENERATOR_MULTI_ORIGIN       = "namestats.generator.multi.origin";
+    public static final double DEFAULT_GENERATOR_MULTI_ORIGIN = 0.3;
+    public static final String GENERATOR_UNKNOWN            = "namestats.generator.unknown";
+    public static final double DEFAULT_GENERATOR_UNKNOWN    = 0.2;
+    public static final String GENERATOR_BLANK              = "namestats.generator.blank";
+    public static final double DEFAULT_GENERATOR_BLANK      = 0.05;
+    public static final String GENERATOR_SEED               = "namestats.generator.seed";
+    public static final long DEFAULT_GENERATOR_SEED         = 1;
+
+    // Input sizes and jobs of NameScalingBenchmark
+    public static final String SCALING_SIZES                = "namestats.scaling.sizes";
+    public static final String DEFAULT_SCALING_SIZES        = "100m,1g,10g";
+    public static final String SCALING_JOBS                 = "namestats.scaling.jobs";
+    public static final String DEFAULT_SCALING_JOBS         = "NameCountByOrigin,NameCountByOriginCount,NameGenderProp";
+
+    // Sizes of the sketches of NameSketchStats
+    public static final String SKETCH_CMS_WIDTH             = "namestats.sketch.cms.width";
+    public static final int DEFAULT_SKETCH_CMS_WIDTH        = 2048;
+    public static final String SKETCH_CMS_DEPTH             = "namestats.sketch.cms.depth";
+    public static final int DEFAULT_SKETCH_CMS_DEPTH        = 5;
+    public static final String SKETCH_TOPK                  = "namestats.sketch.topk";
+    public static final int DEFAULT_SKETCH_TOPK             = 20;
+    public static final String SKETCH_TOPK_CAPACITY         = "namestats.sketch.topk.capacity";
+    public static final int DEFAULT_SKETCH_TOPK_CAPACITY    = 256;
+    public static final String SKETCH_HLL_PRECISION         = "namestats.sketch.hll.precision";
+    public static final int DEFAULT_SKETCH_HLL_PRECISION    = 14;
+
+    private NameStatsConfig() {
+    }
+
+    public static boolean inMapperCombining(Configuration conf) {
+        return conf.getBoolean(INMAPPER_COMBINE, DEFAULT_INMAPPER_COMBINE);
+    }
+
+    public static int inMapperMaxBytes(Configuration conf) {
+        return conf.getInt(INMAPPER_MAX_BYTES, DEFAULT_INMAPPER_MAX_BYTES);
+    }
+
+    public static boolean embeddedEngine(Configuration conf) {
+        return "embedded".equalsIgnoreCase(conf.get(ENGINE, DEFAULT_ENGINE));
+    }
+
+    public static int embeddedThreads(Configuration conf) {
+        return conf.getInt(EMBEDDED_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static long embeddedSplitBytes(Configuration conf) {
+        return conf.getLong(EMBEDDED_SPLIT_BYTES, DEFAULT_EMBEDDED_SPLIT_BYTES);
+    }
+
+    public static boolean columnarInput(Configuration conf) {
+        return conf.getBoolean(COLUMNAR_INPUT, DEFAULT_COLUMNAR_INPUT);
+    }
+
+    public static int columnarBlockRows(Configuration conf) {
+        return conf.getInt(COLUMNAR_BLOCK_ROWS, DEFAULT_COLUMNAR_BLOCK_ROWS);
+    }
+
+    public static boolean genderPropDistinct(Configuration conf) {
+        return conf.getBoolean(GENDERPROP_DISTINCT, DEFAULT_GENDERPROP_DISTINCT);
+    }
+
+    public static boolean combineInput(Configuration conf) {
+        return conf.getBoolean(COMBINE_INPUT, DEFAULT_COMBINE_INPUT);
+    }
+
+    public static long combineSplitBytes(Configuration conf) {
+        return conf.getLongBytes(COMBINE_SPLIT_BYTES, DEFAULT_COMBINE_SPLIT_BYTES);
+    }
+
+    public static int topK(Configuration conf) {
+        return conf.getInt(TOPK, DEFAULT_TOPK);
+    }
+
+    public static int topKCandidates(Configuration conf) {
+        return conf.getInt(TOPK_CANDIDATES, 4 * topK(conf));
+    }
+
+    public static boolean totalOrder(Configuration conf) {
+        return conf.getBoolean(TOTAL_ORDER, DEFAULT_TOTAL_ORDER);
+    }
+
+    public static float totalOrderSampleFreq(Configuration conf) {
+        return conf.getFloat(TOTAL_ORDER_SAMPLE_FREQ, DEFAULT_TOTAL_ORDER_SAMPLE_FREQ);
+    }
+
+    public static int totalOrderSamples(Configuration conf) {
+        return conf.getInt(TOTAL_ORDER_SAMPLES, DEFAULT_TOTAL_ORDER_SAMPLES);
+    }
+
+    public static int totalOrderMaxSplits(Configuration conf) {
+        return conf.getInt(TOTAL_ORDER_MAX_SPLITS, DEFAULT_TOTAL_ORDER_MAX_SPLITS);
+    }
+
+    public static boolean saltDetect(Configuration conf) {
+        return conf.getBoolean(SALT_DETECT, DEFAULT_SALT_DETECT);
+    }
+
+    public static int saltBuckets(Configuration conf) {
+        return Math.max(1, conf.getInt(SALT_BUCKETS, conf.getInt(MRJobConfig.NUM_REDUCES, 1)));
+    }
+
+    public static CountMinSketch newCountMinSketch(Configuration conf) {
+        return new CountMinSketch(conf.getInt(SKETCH_CMS_WIDTH, DEFAULT_SKETCH_CMS_WIDTH),
+                                  conf.getInt(SKETCH_CMS_DEPTH, DEFAULT_SKETCH_CMS_DEPTH));
+    }
+
+    public static int sketchTopK(Configuration conf) {
+        return conf.getInt(SKETCH_TOPK, DEFAULT_SKETCH_TOPK);
+    }
+
+    public static SpaceSaving newSpaceSaving(Configuration conf) {
+        return new SpaceSaving(Math.max(conf.getInt(SKETCH_TOPK_CAPACITY, DEFAULT_SKETCH_TOPK_CAPACITY), sketchTopK(conf)));
+    }
+
+    public static HyperLogLog newHyperLogLog(Configuration conf) {
+        return new HyperLogLog(conf.getInt(SKETCH_HLL_PRECISION, DEFAULT_SKETCH_HLL_PRECISION));
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Counters of the name statistics mappers, shown with the job counters
+ * (group NameStatsCounter) at the end of each run.
+ *
+ */
+
+public enum NameStatsCounter {
+
+    // Lines parsed and used
+    RECORDS_PARSED,
+
+    // Lines skipped because a field is missing, written to the badrecords output
+    RECORDS_MALFORMED,
+
+    // Origin tokens that are '?' or blank
+    UNKNOWN_ORIGINS,
+
+    // Origin or gender tokens written or aggregated by the mapper
+    TOKENS_EMITTED,
+
+    // NameTopOrigins : the leaders sent by the map tasks were not enough to prove the top K exact
+    TOPK_NOT_EXACT
+}
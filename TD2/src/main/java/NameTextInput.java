@@ -0,0 +1,39 @@
+/**
+ * Input format of the jobs reading name files as text.
+ *
+ * TextInputFormat makes at least one split per file, so a directory of thousands of
+ * small files (one per country for instance) gives thousands of map tasks, each one
+ * costing more to start than to run. With namestats.input.combine=true, the jobs use
+ * CombineTextInputFormat instead : whole files and blocks are packed into splits of up to
+ * namestats.input.combine.split.bytes, first with the blocks of the same node, then
+ * of the same rack, so that map tasks stay close to their data. Records are the same
+ * (offset in the file, line), so the mappers do not change.
+ *
+ */
+
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.CombineTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+
+
+public final class NameTextInput {
+
+    private NameTextInput() {
+    }
+
+    // Text input format of the job, the size of the combined splits is set in the job when combining
+    @SuppressWarnings("rawtypes")
+    public static Class<? extends InputFormat> inputFormat(Job job) {
+        if (!NameStatsConfig.combineInput(job.getConfiguration())) {
+            return TextInputFormat.class;
+        }
+        FileInputFormat.setMaxInputSplitSize(job, NameStatsConfig.combineSplitBytes(job.getConfiguration()));
+        return CombineTextInputFormat.class;
+    }
+
+    public static void setInputFormat(Job job) {
+        job.setInputFormatClass(inputFormat(job));
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * This Map/Reduce job writes the K most frequent origins with their exact counts,
+ * in descending order (same counts as NameCountByOrigin).
+ *
+ * Each map task counts its origins locally and sends only its C leaders (C candidates)
+ * with its threshold t, the count of its largest origin not sent. A single reducer merges
+ * the leaders with a heap of K entries : for an origin, the sum of the received counts is
+ * a lower bound, and adding the thresholds of the tasks which did not send it gives an
+ * upper bound; an origin sent by no task has at most T (sum of all thresholds).
+ * The result is exact when each of the K origins has equal bounds and no other origin
+ * can reach the smallest of them. Otherwise the reducer raises the counter TOPK_NOT_EXACT
+ * and the driver runs the job again with 4 times more candidates (with enough candidates
+ * every task sends all its origins, so this always ends). The shuffle and the reducer
+ * memory depend on K and C, not on the number of distinct origins.
+ *
+ * Options (see NameStatsConfig) : namestats.topk (K), namestats.topk.candidates (C)
+ *
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+
+public class NameTopOrigins {
+
+    // Key of the thresholds : the empty key sorts first, and no origin is empty (blank is '?')
+    private final static Text THRESHOLD = new Text();
+
+
+    public static class Map extends Mapper<LongWritable, Text, Text, SumCountWritable> {
+
+        // Mapper : origins are counted in the task, only the leaders are written in cleanup
+        private final static byte[] unknown = {'?'};
+        private NameRecordParser parser = new NameRecordParser();
+        private InputRecords records;
+        private HashMap<Text, long[]> counts = new HashMap<Text, long[]>();
+        private Text probe = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            records = new InputRecords(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+
+            // A line without origin field is skipped
+            if (!parser.parse(value)) {
+                records.malformed(key, value);
+                return;
+            }
+            records.parsed();
+
+            // Trimmed origin, blank means unknown origin '?' (same rule as NameCountByOrigin)
+            parser.tokenize(NameRecordParser.ORIGINS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenLength() > 0) {
+                    if (parser.tokenIs('?')) {
+                        records.unknownOrigin();
+                    }
+                    count(parser.getBytes(), parser.tokenStart(), parser.tokenLength());
+                } else {
+                    records.unknownOrigin();
+                    count(unknown, 0, unknown.length);
+                }
+                records.tokenEmitted();
+            }
+        }
+
+        private void count(byte[] bytes, int start, int length) {
+            probe.set(bytes, start, length);
+            long[] count = counts.get(probe);
+            if (count == null) {
+                counts.put(new Text(probe), new long[] {1});
+            } else {
+                count[0]++;
+            }
+        }
+
+        // The C leaders are written as (origin, (count, threshold)), the threshold as (THRESHOLD, (threshold, 0))
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            List<Entry<Text, long[]>> leaders = new ArrayList<Entry<Text, long[]>>(counts.entrySet());
+            Collections.sort(leaders, new Comparator<Entry<Text, long[]>>() {
+                public int compare(Entry<Text, long[]> a, Entry<Text, long[]> b) {
+                    long countA = a.getValue()[0];
+                    long countB = b.getValue()[0];
+                    if (countA != countB) {
+                        return countA > countB ? -1 : 1;
+                    }
+                    return a.getKey().compareTo(b.getKey());
+                }
+            });
+
+            int candidates = Math.min(NameStatsConfig.topKCandidates(context.getConfiguration()), leaders.size());
+            long threshold = candidates < leaders.size() ? leaders.get(candidates).getValue()[0] : 0;
+            SumCountWritable value = new SumCountWritable();
+            for (int i = 0; i < candidates; i++) {
+                value.set(leaders.get(i).getValue()[0], threshold);
+                context.write(leaders.get(i).getKey(), value);
+            }
+            value.set(threshold, 0);
+            context.write(THRESHOLD, value);
+            records.close();
+        }
+    }
+
+
+    // Origin with the bounds of its count
+    private static class Candidate {
+        final Text origin;
+        final long lower;
+        final long upper;
+
+        Candidate(Text origin, long lower, long upper) {
+            this.origin = origin;
+            this.lower  = lower;
+            this.upper  = upper;
+        }
+    }
+
+    // Descending count, then ascending origin : the order of the output
+    private static final Comparator<Candidate> DESCENDING = new Comparator<Candidate>() {
+        public int compare(Candidate a, Candidate b) {
+            if (a.lower != b.lower) {
+                return a.lower > b.lower ? -1 : 1;
+            }
+            return a.origin.compareTo(b.origin);
+        }
+    };
+
+
+    public static class Reduce extends Reducer<Text, SumCountWritable, Text, LongWritable> {
+
+        private int k;
+        private PriorityQueue<Candidate> heap;
+        private SumCountWritable total = new SumCountWritable();
+
+        // Sum of the thresholds of all tasks (T) and largest upper bound of the origins left out
+        private long thresholds;
+        private long maxOtherUpper;
+
+        @Override
+        protected void setup(Context context) {
+            k = NameStatsConfig.topK(context.getConfiguration());
+            // The head of the heap is the smallest of the K kept origins
+            heap = new PriorityQueue<Candidate>(k + 1, Collections.reverseOrder(DESCENDING));
+        }
+
+        // Reducer : the thresholds come first, then each origin with the leaders of the tasks which sent it
+        public void reduce(Text key, Iterable<SumCountWritable> values, Context context) throws IOException, InterruptedException {
+            total.set(0, 0);
+            for (SumCountWritable val : values) {
+                total.add(val);
+            }
+            if (key.getLength() == 0) {
+                thresholds = total.getSum();
+                return;
+            }
+
+            // Tasks which did not send the origin have at most their threshold of it
+            long lower = total.getSum();
+            long upper = lower + thresholds - total.getCount();
+            heap.add(new Candidate(new Text(key), lower, upper));
+            if (heap.size() > k) {
+                maxOtherUpper = Math.max(maxOtherUpper, heap.poll().upper);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            List<Candidate> top = new ArrayList<Candidate>(heap);
+            Collections.sort(top, DESCENDING);
+
+            // Exact if the counts are known and no origin left out (sent or not) can pass the smallest one
+            long smallest = top.size() < k ? 0 : top.get(top.size() - 1).lower;
+            boolean exact = maxOtherUpper <= smallest && thresholds <= smallest;
+            for (Candidate candidate : top) {
+                exact &= candidate.lower == candidate.upper;
+            }
+            if (!exact) {
+                context.getCounter(NameStatsCounter.TOPK_NOT_EXACT).increment(1);
+            }
+
+            LongWritable count = new LongWritable();
+            for (Candidate candidate : top) {
+                count.set(candidate.lower);
+                context.write(candidate.origin, count);
+            }
+        }
+    }
+
+    // Launching method of Map/Reduce job in main method
+    public static void main(String[] args) throws Exception {
+
+        // Generic options (-D key=value) are stored in the configuration, paths remain
+        Configuration conf = new Configuration();
+        String[] paths = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (paths.length != 2) {
+            System.err.printf("Two path arguments are needed.\n");
+        }
+        else {
+            Path output = new Path(paths[1]);
+            int candidates = NameStatsConfig.topKCandidates(conf);
+
+            while (true) {
+                Job job = Job.getInstance(conf);
+                job.setJarByClass(NameTopOrigins.class);
+
+                job.setJobName("Top " + NameStatsConfig.topK(conf) + " Origins (" + candidates + " candidates per task)");
+                job.getConfiguration().setInt(NameStatsConfig.TOPK_CANDIDATES, candidates);
+
+                job.setMapOutputKeyClass(Text.class);
+                job.setMapOutputValueClass(SumCountWritable.class);
+                job.setOutputKeyClass(Text.class);
+                job.setOutputValueClass(LongWritable.class);
+
+                job.setMapperClass(Map.class);
+                job.setReducerClass(Reduce.class);
+                // The leaders of all tasks are merged by a single reducer
+                job.setNumReduceTasks(1);
+
+                NameTextInput.setInputFormat(job);
+                job.setOutputFormatClass(TextOutputFormat.class);
+                InputRecords.addNamedOutput(job);
+
+                FileInputFormat.addInputPath(job, new Path(paths[0]));
+                FileOutputFormat.setOutputPath(job, output);
+
+                Counters counters = LocalEngine.runJobForCounters(job);
+                if (counters == null || counters.findCounter(NameStatsCounter.TOPK_NOT_EXACT).getValue() == 0) {
+                    return;
+                }
+
+                // The leaders were not enough to prove the result : run again with more of them
+                System.out.printf("Top origins not proven exact with %d candidates per task, running again\n", candidates);
+                output.getFileSystem(conf).delete(output, true);
+                candidates *= 4;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Dictionary of the origins : each distinct origin gets an integer id.
+ *
+ * Ids are given in the byte order of the origins, so sorting ids gives the
+ * same order as sorting the origin Text keys. Any task loading the same file
+ * therefore computes the same ids.
+ *
+ * The dictionary file has one origin per line. It is either given by the user
+ * or built by a first pass job (BuildMap / BuildReduce) over the input, then
+ * shipped to the tasks with the distributed cache.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.LineReader;
+
+
+public class OriginDictionary {
+
+    // Name of the symbolic link of the dictionary in the working directory of the tasks
+    public static final String CACHE_LINK = "origins.dict";
+
+    private final Text[] origins;
+    private final HashMap<Text, Integer> ids;
+
+
+    private OriginDictionary(ArrayList<Text> sortedOrigins) {
+        this.origins = sortedOrigins.toArray(new Text[sortedOrigins.size()]);
+        this.ids = new HashMap<Text, Integer>(origins.length * 2);
+        for (int id = 0; id < origins.length; id++) {
+            ids.put(origins[id], id);
+        }
+    }
+
+
+    // Id of an origin, -1 if the origin is not in the dictionary
+    public int id(Text origin) {
+        Integer id = ids.get(origin);
+        return id == null ? -1 : id;
+    }
+
+
+    public Text origin(int id) {
+        return origins[id];
+    }
+
+
+    public int size() {
+        return origins.length;
+    }
+
+
+    // Read one origin per line, duplicates and empty lines are ignored
+    public static OriginDictionary read(InputStream in) throws IOException {
+        ArrayList<Text> list = new ArrayList<Text>();
+        LineReader reader = new LineReader(in);
+        try {
+            Text line = new Text();
+            while (reader.readLine(line) > 0) {
+                if (line.getLength() > 0) {
+                    list.add(new Text(line));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        Collections.sort(list);
+        ArrayList<Text> distinct = new ArrayList<Text>(list.size());
+        for (Text origin : list) {
+            if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(origin)) {
+                distinct.add(origin);
+            }
+        }
+        return new OriginDictionary(distinct);
+    }
+
+
+    // Load the dictionary shipped with the distributed cache
+    public static OriginDictionary load(JobContext context) throws IOException {
+        File local = new File(CACHE_LINK);
+        if (local.exists()) {
+            return read(new FileInputStream(local));
+        }
+        // No symbolic link (local runner for instance), read it from its file system
+        URI[] cacheFiles = context.getCacheFiles();
+        if (cacheFiles == null || cacheFiles.length == 0) {
+            throw new IOException("No origin dictionary in the distributed cache");
+        }
+        Path path = new Path(cacheFiles[0].getPath());
+        return read(FileSystem.get(cacheFiles[0], context.getConfiguration()).open(path));
+    }
+
+
+    // Ship the dictionary file to the tasks of a job
+    public static void addToJob(Job job, Path dictionary) throws IOException {
+        URI uri = dictionary.getFileSystem(job.getConfiguration()).makeQualified(dictionary).toUri();
+        job.addCacheFile(URI.create(uri.toString() + "#" + CACHE_LINK));
+    }
+
+
+    public static class BuildMap extends Mapper<LongWritable, Text, Text, NullWritable> {
+
+        // Mapper : keys are the origins (String), values are empty
+        private final static Text unknown = new Text("?");
+        private Text origin = new Text();
+        private NameRecordParser parser = new NameRecordParser();
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            // Malformed lines are skipped, they are counted and written by the counting job
+            if (!parser.parse(value)) {
+                return;
+            }
+            parser.tokenize(NameRecordParser.ORIGINS);
+            while (parser.nextToken()) {
+                parser.trimToken();
+                if (parser.tokenLength() > 0) {
+                    parser.copyToken(origin);
+                } else {
+                    origin.set(unknown);
+                }
+                context.write(origin, NullWritable.get());
+            }
+        }
+    }
+
+    public static class BuildReduce extends Reducer<Text, NullWritable, Text, NullWritable> {
+
+        // Reducer (and combiner) : each distinct origin is written once
+        public void reduce(Text key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+            context.write(key, NullWritable.get());
+        }
+    }
+
+
+    // First pass : write the distinct origins of input into directory output, return the dictionary file
+    public static Path build(Configuration conf, Path input, Path output) throws Exception {
+        Job job = Job.getInstance(conf);
+        job.setJarByClass(OriginDictionary.class);
+
+        job.setJobName("Origin Dictionary");
+
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(NullWritable.class);
+
+        job.setMapperClass(BuildMap.class);
+        job.setCombinerClass(BuildReduce.class);
+        job.setReducerClass(BuildReduce.class);
+        // A single reducer writes the whole dictionary into one file
+        job.setNumReduceTasks(1);
+
+        NameTextInput.setInputFormat(job);
+        job.setOutputFormatClass(TextOutputFormat.class);
+
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+
+        if (!LocalEngine.runJob(job)) {
+            throw new IOException("Origin dictionary job failed");
+        }
+        return new Path(output, "part-r-00000");
+    }
+}
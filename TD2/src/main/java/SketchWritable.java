@@ -0,0 +1,31 @@
+/**
+ * Value of the NameSketchStats shuffle : one of the mergeable sketches
+ * (CountMinSketch, SpaceSaving or HyperLogLog), written with its type.
+ *
+ */
+
+import org.apache.hadoop.io.GenericWritable;
+import org.apache.hadoop.io.Writable;
+
+
+public class SketchWritable extends GenericWritable {
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Writable>[] TYPES = (Class<? extends Writable>[]) new Class<?>[] {
+            CountMinSketch.class,
+            SpaceSaving.class,
+            HyperLogLog.class
+    };
+
+    public SketchWritable() {
+    }
+
+    public SketchWritable(Writable sketch) {
+        set(sketch);
+    }
+
+    @Override
+    protected Class<? extends Writable>[] getTypes() {
+        return TYPES;
+    }
+}
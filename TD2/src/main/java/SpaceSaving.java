@@ -0,0 +1,178 @@
+/**
+ * Space-Saving summary : the most frequent keys of a stream with at most capacity counters.
+ *
+ * When a new key arrives and the summary is full, the key with the smallest count is
+ * replaced and the new key inherits that count as its error. Each reported count
+ * overestimates the true count by at most its error, and the error is at most
+ * N / capacity, where N is the total of all counts. Every key whose true count is
+ * larger than N / capacity is in the summary.
+ * Summaries are merged as in "Mergeable Summaries" (Agarwal et al.) and keep the same bound.
+ *
+ * Serialized form : capacity, size (vints), total (vlong), then (Text, count, error) per key.
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public class SpaceSaving implements Writable {
+
+    // count and error of a key
+    private static final int COUNT = 0;
+    private static final int ERROR = 1;
+
+    private int capacity;
+    private long total;
+    private HashMap<Text, long[]> counters = new HashMap<Text, long[]>();
+
+    // Reused to look keys up without creating a Text
+    private final Text probe = new Text();
+
+    public SpaceSaving() {
+    }
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Maximum overestimation of any reported count
+    public long getMaxError() {
+        return total / capacity;
+    }
+
+
+    public void add(byte[] bytes, int start, int length, long count) {
+        total += count;
+        probe.set(bytes, start, length);
+        long[] counter = counters.get(probe);
+        if (counter != null) {
+            counter[COUNT] += count;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(new Text(probe), new long[] {count, 0});
+            return;
+        }
+        // Full : the key with the smallest count is replaced
+        Text minKey = null;
+        long[] minCounter = null;
+        for (Map.Entry<Text, long[]> entry : counters.entrySet()) {
+            if (minCounter == null || entry.getValue()[COUNT] < minCounter[COUNT]) {
+                minKey = entry.getKey();
+                minCounter = entry.getValue();
+            }
+        }
+        counters.remove(minKey);
+        long min = minCounter[COUNT];
+        minKey.set(probe);
+        counters.put(minKey, new long[] {min + count, min});
+    }
+
+
+    // Smallest count if the summary is full (a missing key may have been counted up to it), 0 otherwise
+    private long missingCount() {
+        if (counters.size() < capacity) {
+            return 0;
+        }
+        long min = Long.MAX_VALUE;
+        for (long[] counter : counters.values()) {
+            min = Math.min(min, counter[COUNT]);
+        }
+        return min;
+    }
+
+
+    public void merge(SpaceSaving other) {
+        long missing = missingCount();
+        long otherMissing = other.missingCount();
+
+        HashSet<Text> keys = new HashSet<Text>(counters.keySet());
+        keys.addAll(other.counters.keySet());
+        HashMap<Text, long[]> merged = new HashMap<Text, long[]>();
+        for (Text key : keys) {
+            long[] counter = counters.get(key);
+            long[] otherCounter = other.counters.get(key);
+            long count = (counter == null ? missing : counter[COUNT]) + (otherCounter == null ? otherMissing : otherCounter[COUNT]);
+            long error = (counter == null ? missing : counter[ERROR]) + (otherCounter == null ? otherMissing : otherCounter[ERROR]);
+            merged.put(key, new long[] {count, error});
+        }
+
+        // Only the capacity largest counts are kept
+        counters = new HashMap<Text, long[]>();
+        for (Map.Entry<Text, long[]> entry : sortedEntries(merged)) {
+            if (counters.size() == capacity) break;
+            counters.put(entry.getKey(), entry.getValue());
+        }
+        total += other.total;
+    }
+
+
+    // Keys by decreasing count : each entry is (key, {count, error})
+    public List<Map.Entry<Text, long[]>> top(int k) {
+        List<Map.Entry<Text, long[]>> sorted = sortedEntries(counters);
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+
+    private static List<Map.Entry<Text, long[]>> sortedEntries(HashMap<Text, long[]> map) {
+        List<Map.Entry<Text, long[]>> entries = new ArrayList<Map.Entry<Text, long[]>>(map.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Text, long[]>>() {
+            public int compare(Map.Entry<Text, long[]> a, Map.Entry<Text, long[]> b) {
+                long countA = a.getValue()[COUNT];
+                long countB = b.getValue()[COUNT];
+                if (countA != countB) {
+                    return countA > countB ? -1 : 1;
+                }
+                return a.getKey().compareTo(b.getKey());
+            }
+        });
+        return entries;
+    }
+
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, capacity);
+        WritableUtils.writeVInt(out, counters.size());
+        WritableUtils.writeVLong(out, total);
+        for (Map.Entry<Text, long[]> entry : counters.entrySet()) {
+            entry.getKey().write(out);
+            WritableUtils.writeVLong(out, entry.getValue()[COUNT]);
+            WritableUtils.writeVLong(out, entry.getValue()[ERROR]);
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        capacity = WritableUtils.readVInt(in);
+        int size = WritableUtils.readVInt(in);
+        total = WritableUtils.readVLong(in);
+        counters = new HashMap<Text, long[]>();
+        for (int i = 0; i < size; i++) {
+            Text key = new Text();
+            key.readFields(in);
+            long count = WritableUtils.readVLong(in);
+            long error = WritableUtils.readVLong(in);
+            counters.put(key, new long[] {count, error});
+        }
+    }
+}
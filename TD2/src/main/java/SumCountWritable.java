@@ -0,0 +1,71 @@
+/**
+ * Partial aggregate (sum, count) of a list of values.
+ *
+ * A proportion sum / count cannot be computed from partial proportions, but
+ * partial (sum, count) pairs can be merged in any order : this lets a combiner
+ * or the mapper itself aggregate values before the shuffle.
+ *
+ * Serialized form : sum and count as vlongs.
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public class SumCountWritable implements Writable {
+
+    private long sum;
+    private long count;
+
+    public SumCountWritable() {
+    }
+
+    public SumCountWritable(long sum, long count) {
+        this.sum   = sum;
+        this.count = count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void set(long sum, long count) {
+        this.sum   = sum;
+        this.count = count;
+    }
+
+    // Merge another partial aggregate into this one
+    public void add(SumCountWritable other) {
+        this.sum   += other.sum;
+        this.count += other.count;
+    }
+
+    public void add(long sum, long count) {
+        this.sum   += sum;
+        this.count += count;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVLong(out, sum);
+        WritableUtils.writeVLong(out, count);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        sum   = WritableUtils.readVLong(in);
+        count = WritableUtils.readVLong(in);
+    }
+
+    @Override
+    public String toString() {
+        return sum + "\t" + count;
+    }
+}
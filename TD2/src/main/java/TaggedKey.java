@@ -0,0 +1,114 @@
+/**
+ * Composite key made of a tag (which statistic the key belongs to) and a Text.
+ *
+ * It lets one job shuffle several statistics at once : keys are sorted by tag
+ * first and then by text, so each reduce call only sees values of one statistic.
+ * A raw comparator is registered so that the shuffle compares serialized keys
+ * without deserializing them.
+ *
+ * Serialized form : tag (1 byte) followed by the Text (vint length + bytes).
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+
+public class TaggedKey implements WritableComparable<TaggedKey> {
+
+    private byte tag;
+    private Text text;
+
+    public TaggedKey() {
+        this.text = new Text();
+    }
+
+    public TaggedKey(byte tag, String text) {
+        this.tag  = tag;
+        this.text = new Text(text);
+    }
+
+    public byte getTag() {
+        return tag;
+    }
+
+    public Text getText() {
+        return text;
+    }
+
+    // The text can then be filled in place with getText().set(...)
+    public void setTag(byte tag) {
+        this.tag = tag;
+    }
+
+    public void set(byte tag, Text text) {
+        this.tag = tag;
+        this.text.set(text);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(tag);
+        text.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        tag = in.readByte();
+        text.readFields(in);
+    }
+
+    public int compareTo(TaggedKey other) {
+        if (tag != other.tag) {
+            return tag < other.tag ? -1 : 1;
+        }
+        return text.compareTo(other.text);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TaggedKey)) {
+            return false;
+        }
+        TaggedKey key = (TaggedKey) other;
+        return tag == key.tag && text.equals(key.text);
+    }
+
+    // Used by the HashPartitioner
+    @Override
+    public int hashCode() {
+        return 31 * tag + text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return tag + ":" + text;
+    }
+
+
+    // Compares the tag byte, then the bytes of the Text after its vint length
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(TaggedKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            if (b1[s1] != b2[s2]) {
+                return b1[s1] < b2[s2] ? -1 : 1;
+            }
+            int n1 = WritableUtils.decodeVIntSize(b1[s1 + 1]);
+            int n2 = WritableUtils.decodeVIntSize(b2[s2 + 1]);
+            return compareBytes(b1, s1 + 1 + n1, l1 - 1 - n1, b2, s2 + 1 + n2, l2 - 1 - n2);
+        }
+    }
+
+    static {
+        WritableComparator.define(TaggedKey.class, new Comparator());
+    }
+}
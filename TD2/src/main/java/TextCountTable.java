@@ -0,0 +1,131 @@
+/**
+ * Open addressing hash table counting occurrences of Text keys.
+ *
+ * Same purpose as IntCountTable but for string keys such as origins.
+ * The bytes of the keys are copied once into a single byte array (arena)
+ * and slots only store offsets, lengths, hashes and counts in primitive arrays.
+ * The table is full when either its slots or its arena reach the memory budget.
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+
+public class TextCountTable {
+
+    // Bytes used by one slot : offset, length, hash and count
+    private static final int SLOT_BYTES = 4 * 4;
+
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] hashes;
+    private final int[] counts;
+    private final int mask;
+    private final int maxEntries;
+    private final int maxArenaBytes;
+    private byte[] arena;
+    private int arenaLength;
+    private int size;
+
+    // Reused writables for flushing
+    private final Text outKey = new Text();
+    private final IntWritable outValue = new IntWritable();
+
+    // Half of the budget goes to the slots, the other half to the key bytes
+    public TextCountTable(int maxBytes) {
+        int capacity = 16;
+        while (capacity * 2L * SLOT_BYTES <= maxBytes / 2 && capacity < (1 << 28)) {
+            capacity *= 2;
+        }
+        this.offsets       = new int[capacity];
+        this.lengths       = new int[capacity];
+        this.hashes        = new int[capacity];
+        this.counts        = new int[capacity];
+        this.mask          = capacity - 1;
+        this.maxEntries    = capacity - (capacity >> 2);
+        this.maxArenaBytes = Math.max(maxBytes / 2, 1024);
+        this.arena         = new byte[Math.min(this.maxArenaBytes, 64 * 1024)];
+        this.arenaLength   = 0;
+        this.size          = 0;
+        clearSlots();
+    }
+
+
+    // Add delta to the count of the key bytes[start, start + length)
+    public void add(byte[] bytes, int start, int length, int delta) {
+        int hash = WritableComparator.hashBytes(bytes, start, length);
+        int slot = hash & mask;
+        while (lengths[slot] >= 0) {
+            if (hashes[slot] == hash && lengths[slot] == length
+                    && WritableComparator.compareBytes(arena, offsets[slot], length, bytes, start, length) == 0) {
+                counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        ensureArena(length);
+        System.arraycopy(bytes, start, arena, arenaLength, length);
+        offsets[slot] = arenaLength;
+        lengths[slot] = length;
+        hashes[slot]  = hash;
+        counts[slot]  = delta;
+        arenaLength += length;
+        size += 1;
+    }
+
+
+    // Add delta to the count of a Text key
+    public void add(Text key, int delta) {
+        add(key.getBytes(), 0, key.getLength(), delta);
+    }
+
+
+    // The caller has to flush the table when it is full
+    public boolean isFull() {
+        return size >= maxEntries || arenaLength >= maxArenaBytes;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    // Write every (key, count) pair to the context and empty the table
+    public void flush(TaskInputOutputContext<?, ?, Text, IntWritable> context) throws IOException, InterruptedException {
+        for (int slot = 0; slot < lengths.length; slot++) {
+            if (lengths[slot] >= 0) {
+                outKey.set(arena, offsets[slot], lengths[slot]);
+                outValue.set(counts[slot]);
+                context.write(outKey, outValue);
+            }
+        }
+        clearSlots();
+        arenaLength = 0;
+        size = 0;
+    }
+
+
+    // A negative length marks an empty slot
+    private void clearSlots() {
+        for (int slot = 0; slot < lengths.length; slot++) {
+            lengths[slot] = -1;
+        }
+    }
+
+
+    // Grow the arena so that it can receive length more bytes
+    private void ensureArena(int length) {
+        if (arenaLength + length > arena.length) {
+            int newLength = Math.max(arena.length * 2, arenaLength + length);
+            byte[] newArena = new byte[newLength];
+            System.arraycopy(arena, 0, newArena, 0, arenaLength);
+            arena = newArena;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Raw comparator of VIntWritable keys.
+ *
+ * VIntWritable has no registered raw comparator, so by default the shuffle
+ * deserializes both keys to compare them. This one decodes the variable
+ * length integers straight from the serialized bytes.
+ *
+ */
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.WritableComparator;
+
+
+public class VIntComparator extends WritableComparator {
+
+    public VIntComparator() {
+        super(VIntWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        try {
+            int v1 = readVInt(b1, s1);
+            int v2 = readVInt(b2, s2);
+            return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ * BulkImporter loads a file of records 'name,bff,friend,age,technology' (one user per line, as
+ * answered to ConsoleReader) into "wauHTable", without the REPL.
+ *
+ * Records follow the formats and rules of ConsoleReader and UserHandler :
+ * - bff is mandatory, friend, age and technology may be empty, invalid records are skipped and counted
+ * - bff and friend are added to user's friends (unless it is user), without duplicates
+ * - a friend that exists gets user as friend, otherwise it is created with user as bff
+ * The import gives the same rows as answering the records one after the other in the REPL. It runs in 3 steps :
+ * - rows of every name of the file are read by parallel workers, in batched gets (columns bff and others only)
+ * - records are applied in order, in memory
+ * - each changed row is written once, by parallel workers with their own UserWriter (batched puts)
+ * A first line 'name,bff,friend,age,technology' is skipped. The layout of friends is chosen with
+ * socialnetwork.friends.columns, as in ConsoleReader.
+ *
+ * To launch it on the hadoop cluster (the file can be local or on HDFS) :
+ * HADOOP_CLASSPATH=$(hbase classpath) hadoop jar SocialNetwork.jar BulkImporter [-Doption=value] file
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.regex.Pattern;
+
+
+public class BulkImporter {
+
+    // Options
+    public static final String WORKERS      = "socialnetwork.import.workers";
+    public static final String BATCH        = "socialnetwork.import.batch";
+    public static final int DEFAULT_WORKERS = 8;
+    public static final int DEFAULT_BATCH   = 1000;
+
+    // Fields of a record
+    private static final String HEADER      = "name,bff,friend,age,technology";
+    private static final int NAME           = 0;
+    private static final int BFF            = 1;
+    private static final int FRIEND         = 2;
+    private static final int AGE            = 3;
+    private static final int TECHNOLOGY     = 4;
+    private static final int FIELDS         = 5;
+    private static final int SHOWN_INVALID  = 10;
+
+    // Formats of ConsoleReader, compiled once
+    private static final Pattern NAME_FORMAT       = Pattern.compile(ConsoleReader.NAME_REGEX);
+    private static final Pattern AGE_FORMAT        = Pattern.compile(ConsoleReader.AGE_REGEX);
+    private static final Pattern TECHNOLOGY_FORMAT = Pattern.compile(ConsoleReader.TECHNOLOGY_REGEX);
+
+    // Attributes
+    private final Configuration conf;
+    private final Connection connection;
+    private final TableName tableName;
+    private final int workers;
+    private final int batch;
+    private final HashMap<String, ImportedUser> users;
+    private long records;
+    private long invalid;
+    private long written;
+    private long failures;
+
+    // Constructor
+    public BulkImporter(Configuration conf, Connection connection, Table table) {
+        this.conf       = conf;
+        this.connection = connection;
+        this.tableName  = table.getName();
+        this.workers    = conf.getInt(WORKERS, DEFAULT_WORKERS);
+        this.batch      = conf.getInt(BATCH, DEFAULT_BATCH);
+        this.users      = new HashMap<String, ImportedUser>();
+    }
+
+
+    // State of a user during the import : row read from the table, then changes made by the records
+    private static final class ImportedUser {
+        boolean exists;
+        String bff = "";
+        boolean bffChanged;
+        String others = "";
+        Set<String> listedFriends;
+        LinkedHashSet<String> addedFriends;
+        LinkedHashMap<String, String> info;
+
+        // Is someone in the list read from the table or added by the import ?
+        boolean hasFriend(String friend) {
+            return ( listedFriends != null && listedFriends.contains(friend) ) || ( addedFriends != null && addedFriends.contains(friend) );
+        }
+
+        boolean isChanged() {
+            return bffChanged || addedFriends != null || info != null;
+        }
+    }
+
+
+    // Row of a user, read and written with the families and columns of User
+    private static final class ImportedRow extends User {
+
+        // Constructor
+        ImportedRow(String name, Table table) {
+            super(name, table);
+        }
+
+        // Read of the columns needed by the import : bff and list of friends
+        Get getFriendColumns() {
+            this.get.addColumn(familyFriends, columnBff);
+            this.get.addColumn(familyFriends, columnOthers);
+            return this.get;
+        }
+
+        // State of the user from its row, every user has a bff so an existing row is never empty
+        void read(Result row, ImportedUser user) {
+            if( row.isEmpty() ) return;
+            user.exists        = true;
+            user.bff           = getRowValue(row, familyFriends, columnBff);
+            user.others        = getRowValue(row, familyFriends, columnOthers);
+            user.listedFriends = new HashSet<String>(getFriendsName(row));
+        }
+
+        // Put of the changes made by the import
+        Put toPut(ImportedUser user) {
+            if( user.bffChanged ){
+                this.put.addColumn(familyFriends, columnBff, bytify(user.bff));
+            }
+            if( user.info != null ){
+                for( Map.Entry<String, String> info : user.info.entrySet() ){
+                    this.put.addColumn(familyInfo, bytify(info.getKey()), bytify(info.getValue()));
+                }
+            }
+            if( user.addedFriends != null && friendColumns ){
+                for( String friend : user.addedFriends ){
+                    this.put.addColumn(familyFriends, friendColumn(friend), emptyValue);
+                }
+            }else if( user.addedFriends != null ){
+                StringBuilder others = new StringBuilder(user.others);
+                for( String friend : user.addedFriends ){
+                    others.append(separator).append(friend);
+                }
+                this.put.addColumn(familyFriends, columnOthers, bytify(others.toString().trim()));
+            }
+            return this.put;
+        }
+    }
+
+
+    // Fields of a valid record in lower case, null if the line is not a valid record
+    private static String[] parse(String line) {
+        String[] fields = line.split(",", -1);
+        if( fields.length > FIELDS ) return null;
+        String[] record = new String[FIELDS];
+        for( int i = 0; i < FIELDS; i++ ){
+            record[i] = i < fields.length ? fields[i].trim().toLowerCase() : "";
+        }
+        boolean valid = NAME_FORMAT.matcher(record[NAME]).matches()
+                && NAME_FORMAT.matcher(record[BFF]).matches()
+                && ( record[FRIEND].equals("") || NAME_FORMAT.matcher(record[FRIEND]).matches() )
+                && AGE_FORMAT.matcher(record[AGE]).matches()
+                && TECHNOLOGY_FORMAT.matcher(record[TECHNOLOGY]).matches();
+        return valid ? record : null;
+    }
+
+
+    // Is the line a record ? (not empty and not the header)
+    private static boolean isRecord(String line) {
+        String trimmed = line.trim();
+        return trimmed.length() > 0 && ! trimmed.equalsIgnoreCase(HEADER);
+    }
+
+
+    // Open the file, local or on HDFS
+    private BufferedReader open(Path input) throws IOException {
+        FileSystem fs = input.getFileSystem(conf);
+        return new BufferedReader(new InputStreamReader(fs.open(input), "UTF-8"));
+    }
+
+
+    // Step 1 : every name of the file, invalid records are counted
+    private void collectNames(Path input) throws IOException {
+        BufferedReader reader = open(input);
+        try {
+            String line;
+            long lineNumber = 0;
+            while( (line = reader.readLine()) != null ){
+                lineNumber++;
+                if( ! isRecord(line) ) continue;
+                String[] record = parse(line);
+                if( record == null ){
+                    if( invalid++ < SHOWN_INVALID ) System.err.println("Invalid record line " + lineNumber + " : '" + line + "'");
+                    continue;
+                }
+                records++;
+                for( int field = NAME; field <= FRIEND; field++ ){
+                    if( record[field].length() > 0 && ! users.containsKey(record[field]) ){
+                        users.put(record[field], new ImportedUser());
+                    }
+                }
+            }
+        }finally{
+            reader.close();
+        }
+    }
+
+
+    // Step 1 : rows of the names read in batches by the workers
+    private void readExistingUsers(ExecutorService executor) throws Exception {
+        List<String> names = new ArrayList<String>(users.keySet());
+        List<Future<?>> reads = new ArrayList<Future<?>>();
+        for( int start = 0; start < names.size(); start += batch ){
+            final List<String> chunk = names.subList(start, Math.min(start + batch, names.size()));
+            reads.add(executor.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    Table table = connection.getTable(tableName);
+                    try {
+                        List<ImportedRow> rows = new ArrayList<ImportedRow>();
+                        List<Get> gets = new ArrayList<Get>();
+                        for( String name : chunk ){
+                            ImportedRow row = new ImportedRow(name, table);
+                            rows.add(row);
+                            gets.add(row.getFriendColumns());
+                        }
+                        // Each worker fills the states of its own names
+                        Result[] results = table.get(gets);
+                        for( int i = 0; i < results.length; i++ ){
+                            rows.get(i).read(results[i], users.get(chunk.get(i)));
+                        }
+                        return null;
+                    }finally{
+                        table.close();
+                    }
+                }
+            }));
+        }
+        for( Future<?> read : reads ){
+            read.get();
+        }
+    }
+
+
+    // Add a friend to a user, if it is not already one of its friends
+    private void addFriend(ImportedUser user, String friend) {
+        if( ! user.hasFriend(friend) ){
+            if( user.addedFriends == null ) user.addedFriends = new LinkedHashSet<String>();
+            user.addedFriends.add(friend);
+        }
+    }
+
+
+    // Set the bff of a user
+    private void setBff(ImportedUser user, String bff) {
+        if( ! bff.equals(user.bff) ){
+            user.bff = bff;
+            user.bffChanged = true;
+        }
+    }
+
+
+    // Set an information of a user
+    private void setInfo(ImportedUser user, String column, String value) {
+        if( value.length() > 0 ){
+            if( user.info == null ) user.info = new LinkedHashMap<String, String>();
+            user.info.put(column, value);
+        }
+    }
+
+
+    // Step 2 : records applied in order with the rules of UserHandler (addBff, addFriend, addInfo then updateIntoDatabase)
+    private void applyRecords(Path input) throws IOException {
+        BufferedReader reader = open(input);
+        try {
+            String line;
+            while( (line = reader.readLine()) != null ){
+                if( ! isRecord(line) ) continue;
+                String[] record = parse(line);
+                if( record == null ) continue;
+
+                String name = record[NAME];
+                ImportedUser user = users.get(name);
+                TreeSet<String> newFriends = new TreeSet<String>();
+
+                // User's row
+                setBff(user, record[BFF]);
+                if( ! record[BFF].equals(name) ){
+                    newFriends.add(record[BFF]);
+                    addFriend(user, record[BFF]);
+                }
+                String friend = record[FRIEND];
+                if( friend.length() > 0 && ! friend.equals(name) && ! newFriends.contains(friend) ){
+                    newFriends.add(friend);
+                    addFriend(user, friend);
+                }
+                setInfo(user, "age", record[AGE]);
+                setInfo(user, "technology", record[TECHNOLOGY]);
+                user.exists = true;
+
+                // Friends' rows : existing friends get user as friend, others are created with user as bff
+                for( String newFriend : newFriends ){
+                    ImportedUser friendUser = users.get(newFriend);
+                    if( ! friendUser.exists ){
+                        setBff(friendUser, name);
+                        friendUser.exists = true;
+                    }
+                    addFriend(friendUser, name);
+                }
+            }
+        }finally{
+            reader.close();
+        }
+    }
+
+
+    // Step 3 : changed rows written by the workers, each with its own buffer of puts
+    private void writeUsers(ExecutorService executor) throws Exception {
+        final long writeBufferSize = conf.getLong(ConsoleReader.WRITE_BUFFER, 0);
+        List<String> changed = new ArrayList<String>();
+        for( Map.Entry<String, ImportedUser> user : users.entrySet() ){
+            if( user.getValue().isChanged() ) changed.add(user.getKey());
+        }
+
+        List<Future<long[]>> writes = new ArrayList<Future<long[]>>();
+        int partSize = Math.max(batch, (changed.size() + workers - 1) / workers);
+        for( int start = 0; start < changed.size(); start += partSize ){
+            final List<String> part = changed.subList(start, Math.min(start + partSize, changed.size()));
+            writes.add(executor.submit(new Callable<long[]>() {
+                public long[] call() throws IOException {
+                    Table table = connection.getTable(tableName);
+                    UserWriter writer = new UserWriter(connection, table, writeBufferSize, 0, null);
+                    try {
+                        for( String name : part ){
+                            writer.mutate(new ImportedRow(name, table).toPut(users.get(name)));
+                        }
+                    }finally{
+                        try {
+                            writer.close();
+                        }finally{
+                            table.close();
+                        }
+                    }
+                    return new long[] {writer.getMutations(), writer.getFailures()};
+                }
+            }));
+        }
+        for( Future<long[]> write : writes ){
+            long[] counts = write.get();
+            written  += counts[0];
+            failures += counts[1];
+        }
+    }
+
+
+    // Import the file, return the number of failed writes
+    public long importFile(Path input) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            long start = System.currentTimeMillis();
+            collectNames(input);
+            readExistingUsers(executor);
+            long read = System.currentTimeMillis();
+            applyRecords(input);
+            long applied = System.currentTimeMillis();
+            writeUsers(executor);
+            long end = System.currentTimeMillis();
+
+            System.out.println("Imported " + records + " records (" + invalid + " invalid) with " + workers + " workers in " + (end - start) + " ms :");
+            System.out.println("- " + users.size() + " users read in " + (read - start) + " ms");
+            System.out.println("- records applied in " + (applied - read) + " ms");
+            System.out.println("- " + written + " rows written in " + (end - applied) + " ms (" + failures + " failed)");
+            return failures;
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        // Establishing connection to HBase
+        Configuration conf = HBaseConfiguration.create();
+        conf.addResource(new Path("/etc/hbase/conf/hbase-site.xml"));
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if( otherArgs.length != 1 ){
+            System.err.println("Usage : BulkImporter [-Doption=value] file");
+            System.exit(2);
+        }
+        User.setFriendColumns(conf.getBoolean(User.FRIEND_COLUMNS, false));
+        User.setSaltBuckets(conf.getInt(User.SALT_BUCKETS, 0));
+        Connection connection = ConnectionFactory.createConnection(conf);
+
+        long failures;
+        try {
+            // Access HBase table "wauHTable" (it has to exist)
+            Table table = connection.getTable(TableName.valueOf("wauHTable"));
+            try {
+                failures = new BulkImporter(conf, connection, table).importFile(new Path(otherArgs[0]));
+
+            // Close table
+            }finally{
+                table.close();
+            }
+
+        // Close connection
+        }finally{
+            connection.close();
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * ConsistencyJob checks the consistency of every user of "wauHTable" with one MapReduce job,
+ * instead of checking users one by one with UserChecker (random reads of every friend of every user).
+ *
+ * The table is scanned once (family 'friends' only) :
+ * - the mapper sends the row of each user to the user itself (name without the salt of the row key) (bff and list of friends)
+ *   and one claim per friendship edge to its target : 'user has target as bff' and 'user has target as friend'
+ * - the reducer of a user receives its row and every claim on it, and reports one line per problem
+ *   'user PROBLEM other' in the output directory
+ * Problems reported (and counted in the counters of the job) :
+ * - NO_BFF                : user has no bff
+ * - MISSING_BFF_ROW       : user's bff is not a row id
+ * - DANGLING_FRIEND       : a friend of user is not a row id
+ * - NON_RECIPROCAL_BFF    : user's bff does not have user as friend (a user can be its own bff)
+ * - NON_RECIPROCAL_FRIEND : a friend of user does not have user as friend
+ * - DUPLICATE_FRIEND      : a friend appears several times in user's friends
+ *
+ * To launch it on the hadoop cluster :
+ * HADOOP_CLASSPATH=$(hbase classpath) hadoop jar SocialNetwork.jar ConsistencyJob [-Doption=value] output
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+
+public class ConsistencyJob {
+
+    // Problems found, also used as counters
+    public enum Problem {
+        NO_BFF, MISSING_BFF_ROW, DANGLING_FRIEND, NON_RECIPROCAL_BFF, NON_RECIPROCAL_FRIEND, DUPLICATE_FRIEND
+    }
+
+    // Number of users checked
+    public enum Users {
+        USERS
+    }
+
+    // Options
+    public static final String TABLE    = "socialnetwork.check.table";
+    public static final String CACHING  = "socialnetwork.check.caching";
+    public static final int DEFAULT_CACHING = 500;
+
+    // Kinds of values sent to a user : its row, or a claim of another user on it
+    private static final char ROW       = 'R';
+    private static final char BFF_OF    = 'B';
+    private static final char FRIEND_OF = 'F';
+    private static final String TAB     = "\t";
+
+
+    // Sends the row of each user to itself and each of its edges to the target
+    public static class EdgeMapper extends TableMapper<Text, Text> {
+
+        private final Text target = new Text();
+        private final Text value  = new Text();
+
+        // Row keys are salted as configured for the job
+        @Override
+        protected void setup(Context context) {
+            User.setSaltBuckets(context.getConfiguration().getInt(User.SALT_BUCKETS, 0));
+        }
+
+        @Override
+        protected void map(ImmutableBytesWritable key, Result row, Context context) throws IOException, InterruptedException {
+            String name = User.nameOf(key.get(), key.getOffset(), key.getLength());
+            User user = new User(name, null);
+            String bff = user.getRowValue(row, user.familyFriends, user.columnBff);
+            ArrayList<String> friends = user.getFriendsName(row);
+            context.getCounter(Users.USERS).increment(1);
+
+            // Row : bff, then friends as they are stored (duplicates included)
+            StringBuilder own = new StringBuilder().append(ROW).append(TAB).append(bff);
+            for( String friend : friends ){
+                own.append(TAB).append(friend);
+            }
+            emit(context, name, own.toString());
+
+            // Edges : one claim per distinct target and kind
+            if( ! "".equals(bff) ){
+                emit(context, bff, BFF_OF + TAB + name);
+            }
+            for( String friend : new LinkedHashSet<String>(friends) ){
+                emit(context, friend, FRIEND_OF + TAB + name);
+            }
+        }
+
+        private void emit(Context context, String to, String content) throws IOException, InterruptedException {
+            target.set(to);
+            value.set(content);
+            context.write(target, value);
+        }
+    }
+
+
+    // Joins the row of a user with the claims on it and reports the problems
+    public static class CheckReducer extends Reducer<Text, Text, Text, Text> {
+
+        private final Text user   = new Text();
+        private final Text report = new Text();
+
+        @Override
+        protected void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+            String name = key.toString();
+            boolean exists = false;
+            String bff = "";
+            List<String> friendList = new ArrayList<String>();
+            List<String> bffOf = new ArrayList<String>();
+            List<String> friendOf = new ArrayList<String>();
+
+            // Claims are kept until the row is found, as values are not sorted
+            for( Text value : values ){
+                String[] fields = value.toString().split(TAB, -1);
+                switch( fields[0].charAt(0) ){
+                    case ROW:
+                        exists = true;
+                        bff = fields[1];
+                        for( int i = 2; i < fields.length; i++ ) friendList.add(fields[i]);
+                        break;
+                    case BFF_OF:
+                        bffOf.add(fields[1]);
+                        break;
+                    case FRIEND_OF:
+                        friendOf.add(fields[1]);
+                        break;
+                    default:
+                        throw new IOException("Unknown value '" + value + "' for " + name);
+                }
+            }
+            Set<String> friends = new HashSet<String>(friendList);
+
+            // Problems of the user itself
+            if( exists && "".equals(bff) ){
+                report(context, name, Problem.NO_BFF, "");
+            }
+            if( friends.size() < friendList.size() ){
+                Set<String> seen = new HashSet<String>();
+                Set<String> duplicates = new TreeSet<String>();
+                for( String friend : friendList ){
+                    if( ! seen.add(friend) ) duplicates.add(friend);
+                }
+                for( String friend : duplicates ){
+                    report(context, name, Problem.DUPLICATE_FRIEND, friend);
+                }
+            }
+
+            // Problems of the users that claim this one as bff or friend
+            for( String other : bffOf ){
+                if( ! exists ){
+                    report(context, other, Problem.MISSING_BFF_ROW, name);
+                }else if( ! other.equals(name) && ! friends.contains(other) ){
+                    report(context, other, Problem.NON_RECIPROCAL_BFF, name);
+                }
+            }
+            for( String other : friendOf ){
+                if( ! exists ){
+                    report(context, other, Problem.DANGLING_FRIEND, name);
+                }else if( ! friends.contains(other) ){
+                    report(context, other, Problem.NON_RECIPROCAL_FRIEND, name);
+                }
+            }
+        }
+
+        private void report(Context context, String name, Problem problem, String other) throws IOException, InterruptedException {
+            context.getCounter(problem).increment(1);
+            user.set(name);
+            report.set(other.length() > 0 ? problem + TAB + other : problem.toString());
+            context.write(user, report);
+        }
+    }
+
+
+    // Job scanning the family 'friends' of the table, every block read once and not kept in the block cache
+    public static Job createJob(Configuration conf, Path output) throws IOException {
+        Job job = Job.getInstance(conf, "Consistency of the social network");
+        job.setJarByClass(ConsistencyJob.class);
+
+        Scan scan = new Scan();
+        scan.addFamily(Bytes.toBytes("friends"));
+        scan.setCaching(conf.getInt(CACHING, DEFAULT_CACHING));
+        scan.setCacheBlocks(false);
+        TableMapReduceUtil.initTableMapperJob(conf.get(TABLE, "wauHTable"), scan, EdgeMapper.class, Text.class, Text.class, job);
+
+        job.setReducerClass(CheckReducer.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        job.setOutputFormatClass(TextOutputFormat.class);
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = HBaseConfiguration.create();
+        conf.addResource(new Path("/etc/hbase/conf/hbase-site.xml"));
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if( otherArgs.length != 1 ){
+            System.err.println("Usage : ConsistencyJob [-Doption=value] output");
+            System.exit(2);
+        }
+
+        Job job = createJob(conf, new Path(otherArgs[0]));
+        boolean success = job.waitForCompletion(true);
+
+        // Summary of the problems found
+        if( success ){
+            System.out.println(job.getCounters().findCounter(Users.USERS).getValue() + " users checked :");
+            for( Problem problem : Problem.values() ){
+                Counter counter = job.getCounters().findCounter(problem);
+                System.out.println("- " + problem + " : " + counter.getValue());
+            }
+        }
+        System.exit(success ? 0 : 1);
+    }
+}
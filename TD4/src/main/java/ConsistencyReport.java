@@ -0,0 +1,107 @@
+/**
+ * ConsistencyReport gathers the result of every check of UserChecker for one user :
+ * - user exists (row id)
+ * - user has a bff, which is a row id and has user as friend
+ * - user's other friends are row ids and have user as friend
+ * - user's friends are unique (no redundancy)
+ * Friends failing a check are listed, so that the report tells which ones to fix.
+ *
+ * A report is built by UserChecker.checkConsistency() from a single snapshot of the rows.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class ConsistencyReport {
+
+    // Attributes
+    private final String name;
+    private boolean exists;
+    private boolean hasBff;
+    private boolean bffHasId;
+    private boolean bffHasUserAsFriend;
+    private boolean uniqueFriends;
+    private final List<String> friendsWithoutId         = new ArrayList<String>();
+    private final List<String> friendsWithoutUser       = new ArrayList<String>();
+
+    // Constructor : a report of a user that does not exist
+    public ConsistencyReport(String name) {
+        this.name = name;
+    }
+
+
+    // Setters used by UserChecker
+    void setExists(boolean exists){
+        this.exists = exists;
+    }
+
+    void setBff(boolean hasBff, boolean bffHasId, boolean bffHasUserAsFriend){
+        this.hasBff             = hasBff;
+        this.bffHasId           = bffHasId;
+        this.bffHasUserAsFriend = bffHasUserAsFriend;
+    }
+
+    void setUniqueFriends(boolean uniqueFriends){
+        this.uniqueFriends = uniqueFriends;
+    }
+
+    void addFriendWithoutId(String friend){
+        this.friendsWithoutId.add(friend);
+    }
+
+    void addFriendWithoutUser(String friend){
+        this.friendsWithoutUser.add(friend);
+    }
+
+
+    // Getters
+    public String getName(){
+        return name;
+    }
+
+    public boolean exists(){
+        return exists;
+    }
+
+    public boolean hasBff(){
+        return hasBff;
+    }
+
+    public boolean bffHasId(){
+        return bffHasId;
+    }
+
+    public boolean bffHasUserAsFriend(){
+        return bffHasUserAsFriend;
+    }
+
+    public boolean otherFriendsHaveIds(){
+        return friendsWithoutId.isEmpty();
+    }
+
+    public boolean friendsHaveUserAsFriend(){
+        return friendsWithoutUser.isEmpty();
+    }
+
+    public boolean uniqueFriends(){
+        return uniqueFriends;
+    }
+
+    // Friends that are not row ids
+    public List<String> getFriendsWithoutId(){
+        return friendsWithoutId;
+    }
+
+    // Friends that do not have user as friend
+    public List<String> getFriendsWithoutUser(){
+        return friendsWithoutUser;
+    }
+
+
+    // Is user consistent with all its friends ?
+    public boolean isConsistent(){
+        return exists && hasBff && bffHasId && bffHasUserAsFriend
+                && otherFriendsHaveIds() && friendsHaveUserAsFriend() && uniqueFriends;
+    }
+}
@@ -1,7 +1,8 @@
 /**
  * WARNING :
  * "wauHTable" needs to exist before launching the main.
- * It also needs to have 2 families "friends" and "info".
+ * It also needs to have 2 families "friends" and "info" (TableProvisioner creates it).
+ * If it was created with salted row keys, the same -Dsocialnetwork.salt.buckets=n has to be given.
  *
  * ConsoleReader is a class that handles all interactions with the user.
  * It will create a connection with the HBase Database and will use
@@ -37,6 +38,7 @@ import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 import java.io.IOException;
 import java.util.Scanner;
@@ -45,6 +47,17 @@ import static java.util.regex.Pattern.matches;
 
 
 public class ConsoleReader {
+
+    // Options of the write-behind buffer (see UserWriter)
+    public static final String WRITE_BEHIND   = "socialnetwork.write.behind";
+    public static final String WRITE_BUFFER   = "socialnetwork.write.buffer";
+    public static final String WRITE_FLUSH_MS = "socialnetwork.write.flush.ms";
+
+    // Formats of the answers, also checked by BulkImporter
+    public static final String NAME_REGEX       = "^[a-z]+$";
+    public static final String AGE_REGEX        = "^$|^[1-9]$|^[1-9][1-9]$";
+    public static final String TECHNOLOGY_REGEX = "^$|^flink$|^apex$|^spark$";
+
     Scanner scan ;
 
     public ConsoleReader(){
@@ -117,6 +130,11 @@ public class ConsoleReader {
         // Establishing connection to HBase
         Configuration conf = HBaseConfiguration.create();
         conf.addResource(new Path("/etc/hbase/conf/hbase-site.xml"));
+        new GenericOptionsParser(conf, args);
+
+        // Layout of friends : one column per friend or the list 'others' (default), and salt of row keys (none by default)
+        User.setFriendColumns(conf.getBoolean(User.FRIEND_COLUMNS, false));
+        User.setSaltBuckets(conf.getInt(User.SALT_BUCKETS, 0));
         Connection connection = ConnectionFactory.createConnection(conf);
 
         try {
@@ -125,16 +143,23 @@ public class ConsoleReader {
             System.out.println("\nConnection to HBase established\n\n\n");
             String name = "" ;
 
+            // Optional write-behind buffer of the puts of users and their friends
+            UserWriter writer = null;
+            if( conf.getBoolean(WRITE_BEHIND, false) ){
+                writer = new UserWriter(connection, table, conf.getLong(WRITE_BUFFER, 0),
+                        conf.getLong(WRITE_FLUSH_MS, UserWriter.DEFAULT_FLUSH_PERIOD_MS), null);
+            }
+
             try {
                 // Instance of ConsoleReader for asking input from user
                 ConsoleReader consoleReader = new ConsoleReader();
 
                 // Creating regex formula for checking answer format
                 final String qRegex                 = "^$|^q$";                         // matches 'q' or ''
-                final String obligatoryNameRegex    = "^[a-z]+$";                       // matches name with only alphabet standard character (no accents)
+                final String obligatoryNameRegex    = NAME_REGEX;                       // matches name with only alphabet standard character (no accents)
                 final String nameRegex              = "^$|".concat(obligatoryNameRegex);// matches name or ''
-                final String ageRegex               = "^$|^[1-9]$|^[1-9][1-9]$";        // matches 0 to 99 or ''
-                final String technologyChoiceRegex  = "^$|^flink$|^apex$|^spark$";      // matches 'apex','flink' or 'spark' or ''
+                final String ageRegex               = AGE_REGEX;                        // matches 0 to 99 or ''
+                final String technologyChoiceRegex  = TECHNOLOGY_REGEX;                 // matches 'apex','flink' or 'spark' or ''
                 final String sRegex                 = "^$|^s$";                         // matches 's' or ''
 
 
@@ -143,7 +168,7 @@ public class ConsoleReader {
                 while( startSession ) {
 
                     name = consoleReader.askQuestion("What is your name ?", "name", obligatoryNameRegex);
-                    UserHandler user = new UserHandler(name, table);
+                    UserHandler user = new UserHandler(name, table, writer);
 
                     // Asking information about the user
                     String bff      = consoleReader.askQuestion("Who is your best friend for life, a.k.a BFF ? (obligatory)", "bff name", obligatoryNameRegex);
@@ -162,6 +187,9 @@ public class ConsoleReader {
 
 
 
+                // Every update has to be written before checking consistency
+                if( writer != null ) writer.flush();
+
                 // BONUS : Starting the REPL for checking consistency of a user
                 boolean startCheck = "".equals(consoleReader.askQuestion("Do you want to check consistency of an user ? ('q' to quit / enter to continue)", "choice", qRegex));
                 while( startCheck ) {
@@ -170,33 +198,29 @@ public class ConsoleReader {
                     UserChecker userChecker = new UserChecker(nameToCheck, table);
                     String warning = "Inconsistency found : ";
 
-                    if( userChecker.exists() ){
-                        boolean consistent = true ;
-                        if( ! userChecker.hasBff() ){
+                    // All checks are computed from one read of the user and one batched read of its friends
+                    ConsistencyReport report = userChecker.checkConsistency();
+
+                    if( report.exists() ){
+                        if( ! report.hasBff() ){
                             System.out.println(warning + nameToCheck + " do not have bff.");
-                            consistent = false ;
                         }
-                        if( ! userChecker.bffHasId() ){
+                        if( ! report.bffHasId() ){
                             System.out.println(warning + "bff is not a row id.");
-                            consistent = false ;
                         }
-                        if( ! userChecker.bffHasUserAsFriend() ){
+                        if( ! report.bffHasUserAsFriend() ){
                             System.out.println(warning + "bff does not have " + nameToCheck + " as friend.");
-                            consistent = false ;
                         }
-                        if( ! userChecker.otherFriendsHaveIds() ){
-                            System.out.println(warning + "one friend is not a row id.");
-                            consistent = false ;
+                        if( ! report.otherFriendsHaveIds() ){
+                            System.out.println(warning + "friends " + report.getFriendsWithoutId() + " are not row ids.");
                         }
-                        if( ! userChecker.friendsHaveUserAsFriend() ){
-                            System.out.println(warning + "one friend do not have " + nameToCheck + " as friend.");
-                            consistent = false ;
+                        if( ! report.friendsHaveUserAsFriend() ){
+                            System.out.println(warning + "friends " + report.getFriendsWithoutUser() + " do not have " + nameToCheck + " as friend.");
                         }
-                        if( ! userChecker.uniqueFriends() ){
+                        if( ! report.uniqueFriends() ){
                             System.out.println(warning + "list of all friends is not unique");
-                            consistent = false ;
                         }
-                        if( consistent ){
+                        if( report.isConsistent() ){
                             System.out.println(nameToCheck + " is consistent with his friends.");
                         }
 
@@ -208,9 +232,13 @@ public class ConsoleReader {
                 }
 
 
-            // Close table
+            // Send last updates and close table
             }finally {
-                if( table != null ) table.close();
+                try {
+                    if( writer != null ) writer.close();
+                }finally{
+                    if( table != null ) table.close();
+                }
             }
 
         // Close connection
@@ -0,0 +1,216 @@
+/**
+ * FriendColumnsMigration : extension of User class
+ * Converts the list of friends of a user (column 'others') into one column per friend.
+ *
+ * The main program scans the rows that still have a column 'others' and migrates them
+ * with several workers (8 by default, given as first argument), the scan waits when
+ * 2 batches per worker are not migrated yet so that only these rows are held in memory :
+ * - the columns of the friends are put and the column 'others' is deleted in one atomic mutation
+ * - the mutation is only applied if 'others' did not change since it was read,
+ *   otherwise the row is read again and the migration retried
+ * The table stays online : clients using one column per friend (see User.setFriendColumns)
+ * read both layouts, they should be started before the migration.
+ * Rows written again by a client still using the list are converted by running the migration again.
+ *
+ * To launch it on the hadoop cluster :
+ * HADOOP_CLASSPATH=$(hbase classpath) hadoop jar SocialNetwork.jar FriendColumnsMigration [-Doption=value] [workers]
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class FriendColumnsMigration extends User {
+
+    // Attributes
+    public static final TableName TABLE_NAME   = TableName.valueOf("wauHTable");
+    public static final int DEFAULT_WORKERS    = 8;
+    private static final int ROWS_PER_TASK     = 100;
+    private static final int TASKS_PER_WORKER  = 2;
+    private static final int MAX_RETRIES       = 10;
+
+    private int friends;
+    private int retries;
+
+    // Constructor
+    public FriendColumnsMigration(String name, Table table) {
+        super(name, table);
+    }
+
+
+    // Migrate user's row from the list it holds, return false if there was nothing to migrate
+    public boolean migrate(byte[] others) throws IOException {
+        while( others != null ){
+            RowMutations mutations = new RowMutations(this.get.getRow());
+
+            // One column per friend of the list
+            List<String> friendList = new ArrayList<String>();
+            for( String friend : Bytes.toString(others).split(separator) ){
+                if( ! friend.equals("") ) friendList.add(friend);
+            }
+            if( ! friendList.isEmpty() ){
+                Put putFriends = new Put(this.get.getRow());
+                for( String friend : friendList ){
+                    putFriends.addColumn(familyFriends, friendColumn(friend), emptyValue);
+                }
+                mutations.add(putFriends);
+            }
+            mutations.add(new Delete(this.get.getRow()).addColumns(familyFriends, columnOthers));
+
+            // Applied only if nobody changed the list meanwhile
+            if( this.table.checkAndMutate(this.get.getRow(), familyFriends, columnOthers, CompareFilter.CompareOp.EQUAL, others, mutations) ){
+                this.cache.invalidate(this.table, this.get.getRow());
+                this.friends += friendList.size();
+                return true;
+            }
+
+            // Otherwise read the list again
+            if( ++this.retries > MAX_RETRIES ){
+                throw new IOException("Friends of " + this.name + " keep changing, migration given up");
+            }
+            Get getOthers = new Get(this.get.getRow()).addColumn(familyFriends, columnOthers);
+            others = this.table.get(getOthers).getValue(familyFriends, columnOthers);
+        }
+        return false;
+    }
+
+
+    // Number of friends converted into columns
+    public int getFriends() {
+        return friends;
+    }
+
+
+    // Number of times the list changed during the migration
+    public int getRetries() {
+        return retries;
+    }
+
+
+    // Migrate a batch of rows with its own table (a Table is not thread safe)
+    private static class MigrationTask implements Runnable {
+
+        // Attributes
+        private final Connection connection;
+        private final List<Result> rows;
+        private final AtomicLong[] counters;
+        private final Semaphore pending;
+
+        // Constructor
+        MigrationTask(Connection connection, List<Result> rows, AtomicLong[] counters, Semaphore pending) {
+            this.connection = connection;
+            this.rows       = rows;
+            this.counters   = counters;
+            this.pending    = pending;
+        }
+
+        // Migrate every row of the batch, then let the scan submit another batch
+        public void run() {
+            try {
+                Table table = connection.getTable(TABLE_NAME);
+                try {
+                    for( Result row : rows ){
+                        FriendColumnsMigration user = new FriendColumnsMigration(nameOf(row.getRow()), table);
+                        if( user.migrate(row.getValue(user.familyFriends, user.columnOthers)) ){
+                            counters[0].incrementAndGet();
+                        }
+                        counters[1].addAndGet(user.getFriends());
+                        counters[2].addAndGet(user.getRetries());
+                    }
+                }finally{
+                    table.close();
+                }
+            }catch( IOException e ){
+                throw new RuntimeException(e);
+            }finally{
+                pending.release();
+            }
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        // Establishing connection to HBase
+        Configuration conf = HBaseConfiguration.create();
+        conf.addResource(new Path("/etc/hbase/conf/hbase-site.xml"));
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        int workers = otherArgs.length > 0 ? Integer.parseInt(otherArgs[0]) : DEFAULT_WORKERS;
+        setSaltBuckets(conf.getInt(SALT_BUCKETS, 0));
+        Connection connection = ConnectionFactory.createConnection(conf);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+        try {
+            Table table = connection.getTable(TABLE_NAME);
+
+            // Migrated rows, friends converted into columns and retries
+            AtomicLong[] counters = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            Semaphore pending = new Semaphore(TASKS_PER_WORKER * workers);
+            long start = System.currentTimeMillis();
+
+            try {
+                // Only rows with a list of friends are returned
+                Scan scan = new Scan();
+                scan.addColumn(Bytes.toBytes("friends"), Bytes.toBytes("others"));
+                scan.setCaching(ROWS_PER_TASK);
+                ResultScanner scanner = table.getScanner(scan);
+                try {
+                    List<Result> rows = new ArrayList<Result>();
+                    for( Result row : scanner ){
+                        rows.add(row);
+                        if( rows.size() == ROWS_PER_TASK ){
+                            pending.acquire();
+                            tasks.add(executor.submit(new MigrationTask(connection, rows, counters, pending)));
+                            rows = new ArrayList<Result>();
+                        }
+                    }
+                    if( ! rows.isEmpty() ){
+                        pending.acquire();
+                        tasks.add(executor.submit(new MigrationTask(connection, rows, counters, pending)));
+                    }
+                }finally{
+                    scanner.close();
+                }
+
+                // Wait for the workers, a failure is reported once all of them are done
+                Exception failure = null;
+                for( Future<?> task : tasks ){
+                    try {
+                        task.get();
+                    }catch( Exception e ){
+                        if( failure == null ) failure = e;
+                    }
+                }
+                if( failure != null ) throw failure;
+
+            // Close table
+            }finally{
+                table.close();
+            }
+
+            System.out.println("Migrated " + counters[0] + " users and " + counters[1] + " friends with " + workers
+                    + " workers in " + (System.currentTimeMillis() - start) + " ms (" + counters[2] + " retries)");
+
+        // Close connection
+        }finally{
+            executor.shutdown();
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * LoadTest drives concurrent sessions of the social network against an in-memory table
+ * (MemoryTable, optionally with an injected latency per call) and reports, per kind of operation,
+ * the throughput, the latency percentiles and the number of calls to the table (RPCs) per operation.
+ *
+ * Operations :
+ * - create : a new user with a bff, a friend, an age and a technology (UserHandler)
+ * - update : a new friend and a new age for an existing user (UserHandler)
+ * - check  : consistency of an existing user (UserChecker.checkConsistency())
+ * Users are first created without being measured, then every thread runs its part of the operations,
+ * chosen at random with the weights of the mix. Calls are counted per thread, calls made by the periodic
+ * flush of a UserWriter are only in the totals.
+ *
+ * To launch it (no cluster needed) :
+ * HADOOP_CLASSPATH=$(hbase classpath) hadoop jar SocialNetwork.jar LoadTest [-Doption=value]
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class LoadTest {
+
+    // Options
+    public static final String THREADS     = "socialnetwork.load.threads";
+    public static final String OPERATIONS  = "socialnetwork.load.operations";
+    public static final String USERS       = "socialnetwork.load.users";
+    public static final String MIX         = "socialnetwork.load.mix";
+    public static final String LATENCY     = "socialnetwork.load.latency.us";
+    public static final String CACHE_ROWS  = "socialnetwork.load.cache.rows";
+    public static final String SEED        = "socialnetwork.load.seed";
+
+    // Kinds of operations, weighted by the mix
+    private static final String[] KINDS    = {"create", "update", "check"};
+    private static final int CREATE        = 0;
+    private static final int UPDATE        = 1;
+    private static final int CHECK         = 2;
+    private static final String[] TECHNOLOGIES = {"flink", "apex", "spark"};
+
+    // Attributes
+    private final Configuration conf;
+    private final MemoryTable table;
+    private final UserWriter writer;
+    private final int[] mix;
+    private final AtomicInteger created;
+
+    // Constructor
+    public LoadTest(Configuration conf, MemoryConnection connection) throws IOException {
+        this.conf    = conf;
+        this.table   = connection.getTable(TableName.valueOf("wauHTable"));
+        this.writer  = conf.getBoolean(ConsoleReader.WRITE_BEHIND, false)
+                ? new UserWriter(connection, table, conf.getLong(ConsoleReader.WRITE_BUFFER, 0),
+                        conf.getLong(ConsoleReader.WRITE_FLUSH_MS, UserWriter.DEFAULT_FLUSH_PERIOD_MS), null)
+                : null;
+        this.mix     = new int[KINDS.length];
+        String[] weights = conf.getTrimmedStrings(MIX, "20", "60", "20");
+        for( int i = 0; i < KINDS.length; i++ ){
+            mix[i] = Integer.parseInt(weights[i]);
+        }
+        this.created = new AtomicInteger();
+    }
+
+
+    // Name of the i-th user, with letters only as ConsoleReader requires
+    private static String name(int id) {
+        StringBuilder name = new StringBuilder("u");
+        do {
+            name.append((char) ('a' + id % 26));
+            id /= 26;
+        } while( id > 0 );
+        return name.toString();
+    }
+
+
+    // An existing user (or the new user itself for the first one)
+    private String existingUser(Random random, int self) {
+        int users = Math.min(created.get(), self);
+        return users == 0 ? name(self) : name(random.nextInt(users));
+    }
+
+
+    // Run one operation of a kind
+    private void run(int kind, Random random) throws IOException {
+        switch( kind ){
+            case CREATE:
+                int id = created.getAndIncrement();
+                String friend = random.nextBoolean() ? existingUser(random, id) : "";
+                new UserHandler(name(id), table, writer)
+                        .addBff(existingUser(random, id))
+                        .addFriend(friend)
+                        .addInfo("age", Integer.toString(1 + random.nextInt(9)))
+                        .addInfo("technology", TECHNOLOGIES[random.nextInt(TECHNOLOGIES.length)])
+                        .updateIntoDatabase();
+                break;
+            case UPDATE:
+                int users = Math.max(1, created.get());
+                new UserHandler(name(random.nextInt(users)), table, writer)
+                        .addFriend(name(random.nextInt(users)))
+                        .addInfo("age", Integer.toString(1 + random.nextInt(9)))
+                        .updateIntoDatabase();
+                break;
+            default:
+                new UserChecker(name(random.nextInt(Math.max(1, created.get()))), table).checkConsistency();
+        }
+    }
+
+
+    // Kind of the next operation, chosen with the weights of the mix
+    private int nextKind(Random random) {
+        int total = 0;
+        for( int weight : mix ) total += weight;
+        int draw = random.nextInt(total);
+        for( int kind = 0; kind < mix.length; kind++ ){
+            draw -= mix[kind];
+            if( draw < 0 ) return kind;
+        }
+        return mix.length - 1;
+    }
+
+
+    // Latencies (ns) and calls of the operations of one thread, by kind
+    private static class Measures {
+        long[][] latencies = new long[KINDS.length][16];
+        int[] counts       = new int[KINDS.length];
+        long[] calls       = new long[KINDS.length];
+
+        void add(int kind, long latency, long rpcs) {
+            if( counts[kind] == latencies[kind].length ){
+                latencies[kind] = Arrays.copyOf(latencies[kind], counts[kind] * 2);
+            }
+            latencies[kind][counts[kind]++] = latency;
+            calls[kind] += rpcs;
+        }
+    }
+
+
+    // Run the operations of one thread
+    private Measures runThread(int operations, Random random) throws IOException {
+        Measures measures = new Measures();
+        for( int i = 0; i < operations; i++ ){
+            int kind = nextKind(random);
+            long calls = table.getThreadCalls();
+            long start = System.nanoTime();
+            run(kind, random);
+            measures.add(kind, System.nanoTime() - start, table.getThreadCalls() - calls);
+        }
+        return measures;
+    }
+
+
+    // Percentile of sorted latencies, in ms
+    private static double percentile(long[] sorted, double percent) {
+        if( sorted.length == 0 ) return 0;
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+
+    // Create the users, run the operations and print the report
+    public void run() throws Exception {
+        int threads    = conf.getInt(THREADS, 8);
+        int operations = conf.getInt(OPERATIONS, 100000);
+        int users      = conf.getInt(USERS, 1000);
+        long seed      = conf.getLong(SEED, 1);
+        table.setLatencyMicros(conf.getLong(LATENCY, 0));
+        RowCache.getInstance().setMaxRows(conf.getInt(CACHE_ROWS, RowCache.DEFAULT_MAX_ROWS));
+
+        // Users created before the measures
+        Random random = new Random(seed);
+        for( int i = 0; i < users; i++ ) run(CREATE, random);
+        if( writer != null ) writer.flush();
+        table.resetCalls();
+        RowCache.getInstance().resetStatistics();
+
+        // Operations of the threads
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Measures>> results = new ArrayList<Future<Measures>>();
+        long start = System.nanoTime();
+        try {
+            for( int thread = 0; thread < threads; thread++ ){
+                final int threadOperations = operations / threads + (thread < operations % threads ? 1 : 0);
+                final Random threadRandom = new Random(seed + 1 + thread);
+                results.add(executor.submit(new Callable<Measures>() {
+                    public Measures call() throws IOException {
+                        return runThread(threadOperations, threadRandom);
+                    }
+                }));
+            }
+            List<Measures> measures = new ArrayList<Measures>();
+            for( Future<Measures> result : results ) measures.add(result.get());
+            if( writer != null ) writer.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            // Report
+            System.out.println(String.format("Load test : %d operations (%d users first), %d threads, latency %d us, one column per friend %s, write behind %s, salt buckets %d",
+                    operations, users, threads, conf.getLong(LATENCY, 0), conf.getBoolean(User.FRIEND_COLUMNS, false), writer != null,
+                    conf.getInt(User.SALT_BUCKETS, 0)));
+            System.out.println(String.format("%-8s %9s %10s %9s %9s %9s %9s %9s", "", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "RPCs/op"));
+            for( int kind = 0; kind < KINDS.length; kind++ ){
+                int count = 0;
+                long calls = 0;
+                for( Measures measure : measures ){
+                    count += measure.counts[kind];
+                    calls += measure.calls[kind];
+                }
+                long[] latencies = new long[count];
+                int next = 0;
+                for( Measures measure : measures ){
+                    System.arraycopy(measure.latencies[kind], 0, latencies, next, measure.counts[kind]);
+                    next += measure.counts[kind];
+                }
+                Arrays.sort(latencies);
+                System.out.println(String.format("%-8s %9d %10.0f %9.3f %9.3f %9.3f %9.3f %9.2f", KINDS[kind], count, count / seconds,
+                        percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 100),
+                        count == 0 ? 0.0 : (double) calls / count));
+            }
+            System.out.println(String.format("total    %9d %10.0f in %.2f s, %d calls %s", operations, operations / seconds, seconds,
+                    table.getTotalCalls(), table.getCalls()));
+            System.out.println(RowCache.getInstance());
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = HBaseConfiguration.create();
+        new GenericOptionsParser(conf, args);
+        User.setFriendColumns(conf.getBoolean(User.FRIEND_COLUMNS, false));
+        User.setSaltBuckets(conf.getInt(User.SALT_BUCKETS, 0));
+        MemoryConnection connection = new MemoryConnection(conf);
+        try {
+            new LoadTest(conf, connection).run();
+        }finally{
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * MemoryConnection : connection to in-memory tables (see MemoryTable), so that classes
+ * taking a Connection (UserWriter, BulkImporter, FriendColumnsMigration) run without a cluster.
+ *
+ * Tables are created at their first use and shared by every getTable().
+ * Buffered mutators queue mutations and write them in one call of the table (counted as one batch)
+ * when their buffer is full or flushed.
+ * There is no cluster behind it : getAdmin() and getRegionLocator() throw an UnsupportedOperationException
+ * (tables do not need to be created, see TableProvisioner for a real cluster).
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+
+public class MemoryConnection implements Connection {
+
+    // Attributes
+    private final Configuration conf;
+    private final ConcurrentHashMap<TableName, MemoryTable> tables;
+    private volatile boolean closed;
+
+    // Constructor
+    public MemoryConnection(Configuration conf) {
+        this.conf   = conf;
+        this.tables = new ConcurrentHashMap<TableName, MemoryTable>();
+    }
+
+
+    @Override
+    public Configuration getConfiguration() {
+        return conf;
+    }
+
+
+    // Table shared by every user of the connection
+    @Override
+    public MemoryTable getTable(TableName tableName) throws IOException {
+        MemoryTable table = tables.get(tableName);
+        if( table == null ){
+            tables.putIfAbsent(tableName, new MemoryTable(tableName, conf));
+            table = tables.get(tableName);
+        }
+        return table;
+    }
+
+    @Override
+    public MemoryTable getTable(TableName tableName, ExecutorService pool) throws IOException {
+        return getTable(tableName);
+    }
+
+
+    @Override
+    public BufferedMutator getBufferedMutator(TableName tableName) throws IOException {
+        return getBufferedMutator(new BufferedMutatorParams(tableName));
+    }
+
+    @Override
+    public BufferedMutator getBufferedMutator(BufferedMutatorParams params) throws IOException {
+        long writeBufferSize = params.getWriteBufferSize() > 0 ? params.getWriteBufferSize() : conf.getLong("hbase.client.write.buffer", 2097152);
+        return new MemoryBufferedMutator(getTable(params.getTableName()), writeBufferSize);
+    }
+
+
+    // Mutations queued until the buffer is full or flushed
+    private static class MemoryBufferedMutator implements BufferedMutator {
+
+        // Attributes
+        private final MemoryTable table;
+        private final long writeBufferSize;
+        private List<Mutation> buffer;
+        private long bufferSize;
+
+        // Constructor
+        MemoryBufferedMutator(MemoryTable table, long writeBufferSize) {
+            this.table           = table;
+            this.writeBufferSize = writeBufferSize;
+            this.buffer          = new ArrayList<Mutation>();
+        }
+
+        public TableName getName() {
+            return table.getName();
+        }
+
+        public Configuration getConfiguration() {
+            return table.getConfiguration();
+        }
+
+        public void mutate(Mutation mutation) throws IOException {
+            boolean full;
+            synchronized (this) {
+                buffer.add(mutation);
+                bufferSize += mutation.heapSize();
+                full = bufferSize > writeBufferSize;
+            }
+            if( full ) flush();
+        }
+
+        public void mutate(List<? extends Mutation> mutations) throws IOException {
+            for( Mutation mutation : mutations ) mutate(mutation);
+        }
+
+        // Every queued mutation in one call
+        public synchronized void flush() throws IOException {
+            if( buffer.isEmpty() ) return;
+            try {
+                table.batch(buffer, new Object[buffer.size()]);
+            }catch( InterruptedException e ){
+                throw new IOException(e);
+            }
+            buffer = new ArrayList<Mutation>();
+            bufferSize = 0;
+        }
+
+        public void close() throws IOException {
+            flush();
+        }
+
+        public long getWriteBufferSize() {
+            return writeBufferSize;
+        }
+    }
+
+
+    // Operations of a cluster (see the header)
+    @Override
+    public RegionLocator getRegionLocator(TableName tableName) throws IOException {
+        throw new UnsupportedOperationException("getRegionLocator");
+    }
+
+    @Override
+    public Admin getAdmin() throws IOException {
+        throw new UnsupportedOperationException("getAdmin");
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void abort(String why, Throwable e) {
+        closed = true;
+    }
+
+    @Override
+    public boolean isAborted() {
+        return closed;
+    }
+}
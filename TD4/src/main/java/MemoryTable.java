@@ -0,0 +1,657 @@
+/**
+ * MemoryTable : in-memory stand-in of an HBase table, to run and benchmark User, UserHandler and
+ * UserChecker (and the other tools) without a cluster.
+ *
+ * It keeps the latest version of each cell (one region, no versions, no time ranges) and supports
+ * get (one or batched), exists, put, delete, append, increment, checkAndPut/Delete/Mutate, mutateRow,
+ * batch, batchCallback and scans. It is a partial stand-in, these calls throw an UnsupportedOperationException :
+ * - gets and scans with a filter
+ * - coprocessorService and batchCoprocessorService (no coprocessors)
+ *
+ * Each call that would be one RPC to HBase is counted by operation (also per thread, see getThreadCalls()),
+ * and can be delayed by an injected latency, spent outside of the lock so that concurrent calls overlap.
+ * It is thread safe : one instance is shared by every client of the table (see MemoryConnection).
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.client.coprocessor.Batch;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcChannel;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+public class MemoryTable implements Table {
+
+    // Operations counted
+    public static final String GET             = "get";
+    public static final String MULTI_GET       = "multiGet";
+    public static final String EXISTS          = "exists";
+    public static final String PUT             = "put";
+    public static final String MULTI_PUT       = "multiPut";
+    public static final String DELETE          = "delete";
+    public static final String APPEND          = "append";
+    public static final String INCREMENT       = "increment";
+    public static final String CHECK_AND_MUTATE = "checkAndMutate";
+    public static final String MUTATE_ROW      = "mutateRow";
+    public static final String BATCH           = "batch";
+    public static final String SCAN            = "scan";
+    public static final String SCAN_NEXT       = "scanNext";
+
+    private static final int DEFAULT_CACHING   = 100;
+
+    // Attributes
+    private final TableName name;
+    private final Configuration conf;
+    // row -> family -> qualifier -> latest cell
+    private final TreeMap<byte[], TreeMap<byte[], TreeMap<byte[], Cell>>> rows;
+    private final ReadWriteLock lock;
+    private final ConcurrentHashMap<String, AtomicLong> calls;
+    private final ThreadLocal<long[]> threadCalls;
+    private volatile long latencyNanos;
+    private volatile long writeBufferSize;
+
+    // Constructor
+    public MemoryTable(TableName name, Configuration conf) {
+        this.name        = name;
+        this.conf        = conf;
+        this.rows        = new TreeMap<byte[], TreeMap<byte[], TreeMap<byte[], Cell>>>(Bytes.BYTES_COMPARATOR);
+        this.lock        = new ReentrantReadWriteLock();
+        this.calls       = new ConcurrentHashMap<String, AtomicLong>();
+        this.writeBufferSize = conf.getLong("hbase.client.write.buffer", 2097152);
+        this.threadCalls = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
+    }
+
+
+    // Latency added to every call (0 for none)
+    public void setLatencyMicros(long micros) {
+        this.latencyNanos = micros * 1000;
+    }
+
+
+    // Count a call and wait for the injected latency
+    private void call(String operation) {
+        AtomicLong counter = calls.get(operation);
+        if( counter == null ){
+            calls.putIfAbsent(operation, new AtomicLong());
+            counter = calls.get(operation);
+        }
+        counter.incrementAndGet();
+        threadCalls.get()[0]++;
+        long latency = latencyNanos;
+        if( latency > 0 ) LockSupport.parkNanos(latency);
+    }
+
+
+    // Calls by operation since the last reset
+    public TreeMap<String, Long> getCalls() {
+        TreeMap<String, Long> snapshot = new TreeMap<String, Long>();
+        for( Map.Entry<String, AtomicLong> counter : calls.entrySet() ){
+            snapshot.put(counter.getKey(), counter.getValue().get());
+        }
+        return snapshot;
+    }
+
+    public long getTotalCalls() {
+        long total = 0;
+        for( AtomicLong counter : calls.values() ) total += counter.get();
+        return total;
+    }
+
+    // Calls made by the current thread since it started
+    public long getThreadCalls() {
+        return threadCalls.get()[0];
+    }
+
+    public void resetCalls() {
+        calls.clear();
+    }
+
+    // Number of rows
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+
+    // Read of a row restricted to families and columns (null or empty for all), lock held by the caller
+    private Result read(byte[] row, Map<byte[], NavigableSet<byte[]>> columns) {
+        TreeMap<byte[], TreeMap<byte[], Cell>> families = rows.get(row);
+        if( families == null ) return Result.create(new ArrayList<Cell>());
+        List<Cell> cells = new ArrayList<Cell>();
+        for( Map.Entry<byte[], TreeMap<byte[], Cell>> family : families.entrySet() ){
+            NavigableSet<byte[]> qualifiers = null;
+            if( columns != null && ! columns.isEmpty() ){
+                if( ! columns.containsKey(family.getKey()) ) continue;
+                qualifiers = columns.get(family.getKey());
+            }
+            for( Map.Entry<byte[], Cell> cell : family.getValue().entrySet() ){
+                if( qualifiers == null || qualifiers.isEmpty() || qualifiers.contains(cell.getKey()) ){
+                    cells.add(cell.getValue());
+                }
+            }
+        }
+        return Result.create(cells);
+    }
+
+    private Result read(Get get) {
+        if( get.getFilter() != null ) throw new UnsupportedOperationException("Filters are not supported by MemoryTable");
+        return read(get.getRow(), get.getFamilyMap());
+    }
+
+
+    // Value of a cell, null if there is none, lock held by the caller
+    private byte[] value(byte[] row, byte[] family, byte[] qualifier) {
+        TreeMap<byte[], TreeMap<byte[], Cell>> families = rows.get(row);
+        if( families == null || ! families.containsKey(family) ) return null;
+        Cell cell = families.get(family).get(qualifier);
+        return cell == null ? null : CellUtil.cloneValue(cell);
+    }
+
+
+    // Apply a put, a delete or an append, write lock held by the caller
+    private void apply(Mutation mutation) {
+        byte[] row = mutation.getRow();
+        if( mutation instanceof Delete && mutation.getFamilyCellMap().isEmpty() ){
+            rows.remove(row);
+            return;
+        }
+        TreeMap<byte[], TreeMap<byte[], Cell>> families = rows.get(row);
+        if( families == null ){
+            if( mutation instanceof Delete ) return;
+            families = new TreeMap<byte[], TreeMap<byte[], Cell>>(Bytes.BYTES_COMPARATOR);
+            rows.put(row, families);
+        }
+        long now = System.currentTimeMillis();
+        for( Map.Entry<byte[], List<Cell>> familyCells : mutation.getFamilyCellMap().entrySet() ){
+            byte[] family = familyCells.getKey();
+            TreeMap<byte[], Cell> qualifiers = families.get(family);
+            if( qualifiers == null ){
+                qualifiers = new TreeMap<byte[], Cell>(Bytes.BYTES_COMPARATOR);
+                families.put(family, qualifiers);
+            }
+            for( Cell cell : familyCells.getValue() ){
+                byte[] qualifier = CellUtil.cloneQualifier(cell);
+                if( mutation instanceof Delete ){
+                    KeyValue.Type type = KeyValue.Type.codeToType(cell.getTypeByte());
+                    if( type == KeyValue.Type.DeleteFamily || type == KeyValue.Type.DeleteFamilyVersion ){
+                        qualifiers.clear();
+                    }else{
+                        qualifiers.remove(qualifier);
+                    }
+                    continue;
+                }
+                byte[] value = CellUtil.cloneValue(cell);
+                if( mutation instanceof Append && qualifiers.containsKey(qualifier) ){
+                    value = Bytes.add(CellUtil.cloneValue(qualifiers.get(qualifier)), value);
+                }
+                long timestamp = cell.getTimestamp() == HConstants.LATEST_TIMESTAMP ? now : cell.getTimestamp();
+                qualifiers.put(qualifier, new KeyValue(row, family, qualifier, timestamp, value));
+            }
+            if( qualifiers.isEmpty() ) families.remove(family);
+        }
+        if( families.isEmpty() ) rows.remove(row);
+    }
+
+
+    // Add the amounts of an increment to the cells (missing cells count as 0) and return the new cells,
+    // write lock held by the caller
+    private Result applyIncrement(Increment increment) throws IOException {
+        byte[] row = increment.getRow();
+        long now = System.currentTimeMillis();
+        List<Cell> cells = new ArrayList<Cell>();
+        for( Map.Entry<byte[], List<Cell>> familyCells : increment.getFamilyCellMap().entrySet() ){
+            byte[] family = familyCells.getKey();
+            for( Cell cell : familyCells.getValue() ){
+                byte[] qualifier = CellUtil.cloneQualifier(cell);
+                byte[] current = value(row, family, qualifier);
+                if( current != null && current.length != Bytes.SIZEOF_LONG ){
+                    throw new DoNotRetryIOException("Field is not a long, it's " + current.length + " bytes wide");
+                }
+                long amount = Bytes.toLong(CellUtil.cloneValue(cell)) + (current == null ? 0 : Bytes.toLong(current));
+                cells.add(new KeyValue(row, family, qualifier, now, Bytes.toBytes(amount)));
+            }
+        }
+        Put put = new Put(row);
+        for( Cell cell : cells ) put.add(cell);
+        apply(put);
+        // Cells of a result are sorted, as HBase returns them
+        Collections.sort(cells, KeyValue.COMPARATOR);
+        return Result.create(cells);
+    }
+
+
+    // Apply mutations of any kind under the write lock
+    private void write(List<? extends Mutation> mutations) {
+        lock.writeLock().lock();
+        try {
+            for( Mutation mutation : mutations ) apply(mutation);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    // Does the cell match the condition ? (a null value matches a missing cell), write lock held by the caller
+    private boolean check(byte[] row, byte[] family, byte[] qualifier, CompareFilter.CompareOp compareOp, byte[] value) {
+        byte[] current = value(row, family, qualifier);
+        if( value == null || current == null ){
+            boolean same = value == null && current == null;
+            return compareOp == CompareFilter.CompareOp.NOT_EQUAL ? ! same : same;
+        }
+        // As in HBase, the given value is compared to the value of the cell
+        int comparison = Bytes.compareTo(value, current);
+        switch( compareOp ){
+            case LESS:             return comparison < 0;
+            case LESS_OR_EQUAL:    return comparison <= 0;
+            case EQUAL:            return comparison == 0;
+            case NOT_EQUAL:        return comparison != 0;
+            case GREATER_OR_EQUAL: return comparison >= 0;
+            case GREATER:          return comparison > 0;
+            default:               return false;
+        }
+    }
+
+
+    // Apply mutations only if the cell matches the condition
+    private boolean checkAndWrite(byte[] row, byte[] family, byte[] qualifier, CompareFilter.CompareOp compareOp, byte[] value, List<? extends Mutation> mutations) {
+        call(CHECK_AND_MUTATE);
+        lock.writeLock().lock();
+        try {
+            if( ! check(row, family, qualifier, compareOp, value) ) return false;
+            for( Mutation mutation : mutations ) apply(mutation);
+            return true;
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    @Override
+    public TableName getName() {
+        return name;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return conf;
+    }
+
+    @Override
+    public HTableDescriptor getTableDescriptor() throws IOException {
+        HTableDescriptor descriptor = new HTableDescriptor(name);
+        descriptor.addFamily(new HColumnDescriptor("friends"));
+        descriptor.addFamily(new HColumnDescriptor("info"));
+        return descriptor;
+    }
+
+
+    @Override
+    public boolean exists(Get get) throws IOException {
+        call(EXISTS);
+        lock.readLock().lock();
+        try {
+            return ! read(get).isEmpty();
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] existsAll(List<Get> gets) throws IOException {
+        call(MULTI_GET);
+        boolean[] exists = new boolean[gets.size()];
+        lock.readLock().lock();
+        try {
+            for( int i = 0; i < exists.length; i++ ) exists[i] = ! read(gets.get(i)).isEmpty();
+        }finally{
+            lock.readLock().unlock();
+        }
+        return exists;
+    }
+
+    @Override
+    public Result get(Get get) throws IOException {
+        call(GET);
+        lock.readLock().lock();
+        try {
+            return read(get);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Result[] get(List<Get> gets) throws IOException {
+        call(MULTI_GET);
+        Result[] results = new Result[gets.size()];
+        lock.readLock().lock();
+        try {
+            for( int i = 0; i < results.length; i++ ) results[i] = read(gets.get(i));
+        }finally{
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+
+    @Override
+    public void put(Put put) throws IOException {
+        call(PUT);
+        write(Arrays.asList(put));
+    }
+
+    @Override
+    public void put(List<Put> puts) throws IOException {
+        call(MULTI_PUT);
+        write(puts);
+    }
+
+    @Override
+    public void delete(Delete delete) throws IOException {
+        call(DELETE);
+        write(Arrays.asList(delete));
+    }
+
+    @Override
+    public void delete(List<Delete> deletes) throws IOException {
+        call(BATCH);
+        write(deletes);
+        deletes.clear();
+    }
+
+    @Override
+    public Result append(Append append) throws IOException {
+        call(APPEND);
+        lock.writeLock().lock();
+        try {
+            apply(append);
+            return read(append.getRow(), null);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Result increment(Increment increment) throws IOException {
+        call(INCREMENT);
+        lock.writeLock().lock();
+        try {
+            return applyIncrement(increment);
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long incrementColumnValue(byte[] row, byte[] family, byte[] qualifier, long amount) throws IOException {
+        return Bytes.toLong(increment(new Increment(row).addColumn(family, qualifier, amount)).getValue(family, qualifier));
+    }
+
+    @Override
+    public long incrementColumnValue(byte[] row, byte[] family, byte[] qualifier, long amount, Durability durability) throws IOException {
+        return incrementColumnValue(row, family, qualifier, amount);
+    }
+
+    @Override
+    public void mutateRow(RowMutations mutations) throws IOException {
+        call(MUTATE_ROW);
+        write(mutations.getMutations());
+    }
+
+
+    @Override
+    public boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier, byte[] value, Put put) throws IOException {
+        return checkAndWrite(row, family, qualifier, CompareFilter.CompareOp.EQUAL, value, Arrays.asList(put));
+    }
+
+    @Override
+    public boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier, CompareFilter.CompareOp compareOp, byte[] value, Put put) throws IOException {
+        return checkAndWrite(row, family, qualifier, compareOp, value, Arrays.asList(put));
+    }
+
+    @Override
+    public boolean checkAndDelete(byte[] row, byte[] family, byte[] qualifier, byte[] value, Delete delete) throws IOException {
+        return checkAndWrite(row, family, qualifier, CompareFilter.CompareOp.EQUAL, value, Arrays.asList(delete));
+    }
+
+    @Override
+    public boolean checkAndDelete(byte[] row, byte[] family, byte[] qualifier, CompareFilter.CompareOp compareOp, byte[] value, Delete delete) throws IOException {
+        return checkAndWrite(row, family, qualifier, compareOp, value, Arrays.asList(delete));
+    }
+
+    @Override
+    public boolean checkAndMutate(byte[] row, byte[] family, byte[] qualifier, CompareFilter.CompareOp compareOp, byte[] value, RowMutations mutations) throws IOException {
+        return checkAndWrite(row, family, qualifier, compareOp, value, mutations.getMutations());
+    }
+
+
+    // Gets, puts, deletes, appends, increments and row mutations sent in one call, results in the order of the actions
+    @Override
+    public void batch(List<? extends Row> actions, Object[] results) throws IOException, InterruptedException {
+        call(BATCH);
+        lock.writeLock().lock();
+        try {
+            for( int i = 0; i < actions.size(); i++ ){
+                Row action = actions.get(i);
+                if( action instanceof Get ){
+                    results[i] = read((Get) action);
+                }else if( action instanceof Increment ){
+                    results[i] = applyIncrement((Increment) action);
+                }else if( action instanceof Mutation ){
+                    apply((Mutation) action);
+                    results[i] = Result.create(new ArrayList<Cell>());
+                }else if( action instanceof RowMutations ){
+                    for( Mutation mutation : ((RowMutations) action).getMutations() ) apply(mutation);
+                    results[i] = Result.create(new ArrayList<Cell>());
+                }else{
+                    throw new UnsupportedOperationException("Action not supported by MemoryTable : " + action);
+                }
+            }
+        }finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public Object[] batch(List<? extends Row> actions) throws IOException, InterruptedException {
+        Object[] results = new Object[actions.size()];
+        batch(actions, results);
+        return results;
+    }
+
+    // Batch, then the callback receives the result of each action (the table is one region, named after it)
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> void batchCallback(List<? extends Row> actions, Object[] results, Batch.Callback<R> callback) throws IOException, InterruptedException {
+        batch(actions, results);
+        for( int i = 0; i < actions.size(); i++ ){
+            callback.update(name.getName(), actions.get(i).getRow(), (R) results[i]);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public <R> Object[] batchCallback(List<? extends Row> actions, Batch.Callback<R> callback) throws IOException, InterruptedException {
+        Object[] results = new Object[actions.size()];
+        batchCallback(actions, results, callback);
+        return results;
+    }
+
+
+    // Rows of the scan are read when it starts, then returned by calls of 'caching' rows
+    @Override
+    public ResultScanner getScanner(Scan scan) throws IOException {
+        if( scan.getFilter() != null ) throw new UnsupportedOperationException("Filters are not supported by MemoryTable");
+        call(SCAN);
+        List<Result> results = new ArrayList<Result>();
+        lock.readLock().lock();
+        try {
+            byte[] start = scan.getStartRow();
+            byte[] stop  = scan.getStopRow();
+            for( byte[] row : rows.tailMap(start, true).keySet() ){
+                if( stop.length > 0 && Bytes.compareTo(row, stop) >= 0 ) break;
+                Result result = read(row, scan.getFamilyMap());
+                if( ! result.isEmpty() ) results.add(result);
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+        return new MemoryScanner(results, scan.getCaching() > 0 ? scan.getCaching() : DEFAULT_CACHING);
+    }
+
+
+    // Results of a scan, returned by calls of 'caching' rows
+    private class MemoryScanner implements ResultScanner {
+
+        // Attributes
+        private final List<Result> results;
+        private final int caching;
+        private int next;
+
+        // Constructor
+        MemoryScanner(List<Result> results, int caching) {
+            this.results = results;
+            this.caching = caching;
+        }
+
+        public Result next() throws IOException {
+            if( next == results.size() ) return null;
+            if( next % caching == 0 ) call(SCAN_NEXT);
+            return results.get(next++);
+        }
+
+        public Result[] next(int count) throws IOException {
+            List<Result> batch = new ArrayList<Result>();
+            Result result;
+            while( batch.size() < count && (result = next()) != null ) batch.add(result);
+            return batch.toArray(new Result[batch.size()]);
+        }
+
+        public void close() {
+            next = results.size();
+        }
+
+        public Iterator<Result> iterator() {
+            return new Iterator<Result>() {
+                private Result current;
+
+                public boolean hasNext() {
+                    if( current == null ){
+                        try {
+                            current = MemoryScanner.this.next();
+                        }catch( IOException e ){
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return current != null;
+                }
+
+                public Result next() {
+                    if( ! hasNext() ) throw new NoSuchElementException();
+                    Result result = current;
+                    current = null;
+                    return result;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("remove");
+                }
+            };
+        }
+    }
+
+    @Override
+    public ResultScanner getScanner(byte[] family) throws IOException {
+        return getScanner(new Scan().addFamily(family));
+    }
+
+    @Override
+    public ResultScanner getScanner(byte[] family, byte[] qualifier) throws IOException {
+        return getScanner(new Scan().addColumn(family, qualifier));
+    }
+
+
+    // No coprocessors (see the header)
+    @Override
+    public CoprocessorRpcChannel coprocessorService(byte[] row) {
+        throw new UnsupportedOperationException("coprocessorService");
+    }
+
+    @Override
+    public <T extends Service, R> Map<byte[], R> coprocessorService(Class<T> service, byte[] startKey, byte[] endKey, Batch.Call<T, R> callable) throws Throwable {
+        throw new UnsupportedOperationException("coprocessorService");
+    }
+
+    @Override
+    public <T extends Service, R> void coprocessorService(Class<T> service, byte[] startKey, byte[] endKey, Batch.Call<T, R> callable, Batch.Callback<R> callback) throws Throwable {
+        throw new UnsupportedOperationException("coprocessorService");
+    }
+
+    @Override
+    public <R extends Message> Map<byte[], R> batchCoprocessorService(Descriptors.MethodDescriptor method, Message request, byte[] startKey, byte[] endKey, R responsePrototype) throws Throwable {
+        throw new UnsupportedOperationException("batchCoprocessorService");
+    }
+
+    @Override
+    public <R extends Message> void batchCoprocessorService(Descriptors.MethodDescriptor method, Message request, byte[] startKey, byte[] endKey, R responsePrototype, Batch.Callback<R> callback) throws Throwable {
+        throw new UnsupportedOperationException("batchCoprocessorService");
+    }
+
+    // Puts are written at once, the size is only kept for the callers
+    @Override
+    @Deprecated
+    public long getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    @Override
+    @Deprecated
+    public void setWriteBufferSize(long writeBufferSize) throws IOException {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+
+    // The table is shared, closing one of its users does nothing
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * RowCache : shared read-through cache of rows of the HBase tables, with LRU eviction.
+ *
+ * User reads the same rows many times (each check or update of a column reads the whole row,
+ * and friends are read again for every user that has them). Through the cache, a row is read
+ * from HBase once, then served from memory until :
+ * - it is evicted, when the cache holds more than its maximum number of rows (least recently used first)
+ * - it is invalidated, after UserHandler writes it
+ * Empty rows are cached too, so that exists() is also served from memory.
+ * A row is cached with the columns of the Get that read it : every reader of a table through the cache
+ * must read the same columns (User.rowGet()).
+ * Writes of other clients are not seen until the row is evicted or invalidated.
+ * A row invalidated while it is read from HBase is not cached by that read, as it may be older than the write.
+ *
+ * The cache counts its hits, misses and evictions. A maximum of 0 rows disables it.
+ */
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class RowCache {
+
+    // Attributes
+    public static final int DEFAULT_MAX_ROWS = 10000;
+    private static final RowCache shared = new RowCache(DEFAULT_MAX_ROWS);
+
+    private int maxRows;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private final LinkedHashMap<Key, Result> rows;
+    private final HashMap<Key, Load> loads;
+
+    // Constructor
+    public RowCache(int maxRows) {
+        this.maxRows = maxRows;
+        // Access order : the first entry is the least recently used one
+        this.rows = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                if( size() > RowCache.this.maxRows ){
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.loads = new HashMap<Key, Load>();
+    }
+
+
+    // Cache used by User and its subclasses
+    public static RowCache getInstance() {
+        return shared;
+    }
+
+
+    // Row of the table, read from HBase with the get only if it is not in the cache
+    public Result get(Table table, Get get) throws IOException {
+        Key key = new Key(table.getName(), get.getRow());
+        synchronized (this) {
+            Result result = rows.get(key);
+            if( result != null ){
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        // HBase is read outside of the lock, so that other rows can be served meanwhile
+        Load load;
+        long invalidations;
+        synchronized (this) {
+            load = startLoad(key);
+            invalidations = load.invalidations;
+        }
+        Result result = null;
+        try {
+            result = table.get(get);
+        }finally{
+            synchronized (this) {
+                endLoad(key, load, invalidations, result);
+            }
+        }
+        return result;
+    }
+
+
+    // Read in one batched get the rows that are not in the cache, so that the next reads of these rows are hits
+    // (prefetched rows are counted as misses)
+    public void prefetch(Table table, List<Get> getList) throws IOException {
+        List<Key> keys = new ArrayList<Key>();
+        List<Get> gets = new ArrayList<Get>();
+        List<Load> keyLoads = new ArrayList<Load>();
+        List<Long> invalidations = new ArrayList<Long>();
+        synchronized (this) {
+            if( maxRows == 0 ) return;
+            for( Get get : getList ){
+                Key key = new Key(table.getName(), get.getRow());
+                if( ! rows.containsKey(key) ){
+                    Load load = startLoad(key);
+                    keys.add(key);
+                    gets.add(get);
+                    keyLoads.add(load);
+                    invalidations.add(load.invalidations);
+                }
+            }
+            misses += gets.size();
+        }
+        if( gets.isEmpty() ) return;
+        Result[] results = null;
+        try {
+            results = table.get(gets);
+        }finally{
+            synchronized (this) {
+                for( int i = 0; i < keys.size(); i++ ){
+                    endLoad(keys.get(i), keyLoads.get(i), invalidations.get(i), results == null ? null : results[i]);
+                }
+            }
+        }
+    }
+
+
+    // A read of the row from HBase starts (called with the lock held)
+    private Load startLoad(Key key) {
+        Load load = loads.get(key);
+        if( load == null ){
+            load = new Load();
+            loads.put(key, load);
+        }
+        load.readers++;
+        return load;
+    }
+
+    // A read of the row from HBase ended : its result is cached only if the row was not invalidated
+    // since the read started (called with the lock held, result is null if the read failed)
+    private void endLoad(Key key, Load load, long invalidations, Result result) {
+        if( result != null && maxRows > 0 && load.invalidations == invalidations ){
+            rows.put(key, result);
+        }
+        if( --load.readers == 0 ) loads.remove(key);
+    }
+
+
+    // Row has been written : next read goes to HBase, and reads already started do not cache it
+    public synchronized void invalidate(Table table, byte[] row) {
+        Key key = new Key(table.getName(), row);
+        rows.remove(key);
+        Load load = loads.get(key);
+        if( load != null ) load.invalidations++;
+    }
+
+
+    public synchronized void clear() {
+        rows.clear();
+        for( Load load : loads.values() ){
+            load.invalidations++;
+        }
+    }
+
+
+    // Change maximum number of rows, least recently used rows are evicted if needed
+    public synchronized void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+        while( rows.size() > maxRows ){
+            Key eldest = rows.keySet().iterator().next();
+            rows.remove(eldest);
+            evictions++;
+        }
+    }
+
+
+    // Statistics
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRatio() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = misses = evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RowCache : %d rows (max %d), %d hits, %d misses (hit ratio %.1f%%), %d evictions",
+                rows.size(), maxRows, hits, misses, 100 * getHitRatio(), evictions);
+    }
+
+
+    // Reads of a row from HBase in progress, and invalidations of the row since the first of them started
+    private static final class Load {
+        private int readers;
+        private long invalidations;
+    }
+
+
+    // Row of a table
+    private static final class Key {
+        private final TableName table;
+        private final byte[] row;
+        private final int hash;
+
+        Key(TableName table, byte[] row) {
+            this.table = table;
+            this.row   = row;
+            this.hash  = 31 * table.hashCode() + Bytes.hashCode(row);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if( !(other instanceof Key) ) return false;
+            Key key = (Key) other;
+            return table.equals(key.table) && Bytes.equals(row, key.row);
+        }
+    }
+}
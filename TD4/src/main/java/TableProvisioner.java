@@ -0,0 +1,121 @@
+/**
+ * TableProvisioner creates "wauHTable" with its 2 families "friends" and "info",
+ * pre-split into several regions so that writes are spread over the region servers from the first insert.
+ *
+ * Split keys :
+ * - salted row keys (-Dsocialnetwork.salt.buckets=n, see User) : the salt bytes are cut into equal ranges,
+ *   each region receives the same share of the users whatever their names (regions must not exceed buckets)
+ * - names as row keys : the names (letters only) are cut into equal ranges of their first 2 letters,
+ *   regions are even in key space, but names are not evenly spread over the alphabet
+ * The table is never dropped : the program fails if it already exists.
+ * Clients of the table must then be launched with the same socialnetwork.salt.buckets.
+ *
+ * To launch it on the hadoop cluster :
+ * HADOOP_CLASSPATH=$(hbase classpath) hadoop jar SocialNetwork.jar TableProvisioner [-Doption=value]
+ */
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import java.io.IOException;
+
+
+public class TableProvisioner {
+
+    // Options
+    public static final String TABLE   = "socialnetwork.table.name";
+    public static final String REGIONS = "socialnetwork.table.regions";
+
+    // Names are made of the letters 'a' to 'z'
+    private static final int LETTERS   = 26;
+
+
+    // Split keys of a number of regions, on the salt bytes when rows are salted, on the names otherwise
+    public static byte[][] splitKeys(int regions, int saltBuckets) {
+        if( regions < 1 ){
+            throw new IllegalArgumentException("Number of regions must be positive : " + regions);
+        }
+        if( saltBuckets > 0 && regions > saltBuckets ){
+            throw new IllegalArgumentException("Number of regions (" + regions + ") must not exceed the number of salt buckets (" + saltBuckets + ")");
+        }
+        if( saltBuckets == 0 && regions > LETTERS * LETTERS ){
+            throw new IllegalArgumentException("Number of regions must not exceed " + LETTERS * LETTERS + " : " + regions);
+        }
+
+        byte[][] splits = new byte[regions - 1][];
+        for( int i = 1; i < regions; i++ ){
+            if( saltBuckets > 0 ){
+                // First salt byte of the i-th region
+                splits[i - 1] = new byte[]{ (byte) ((long) i * saltBuckets / regions) };
+            }else{
+                // First 2 letters of the i-th region
+                int prefix = (int) ((long) i * LETTERS * LETTERS / regions);
+                splits[i - 1] = Bytes.toBytes("" + (char) ('a' + prefix / LETTERS) + (char) ('a' + prefix % LETTERS));
+            }
+        }
+        return splits;
+    }
+
+
+    // Description of the table and its families
+    public static HTableDescriptor descriptor(TableName tableName) {
+        HTableDescriptor descriptor = new HTableDescriptor(tableName);
+        descriptor.addFamily(new HColumnDescriptor("friends"));
+        descriptor.addFamily(new HColumnDescriptor("info"));
+        return descriptor;
+    }
+
+
+    // Create the pre-split table
+    public static void provision(Admin admin, TableName tableName, int regions, int saltBuckets) throws IOException {
+        if( admin.tableExists(tableName) ){
+            throw new IOException("Table '" + tableName + "' already exists");
+        }
+        byte[][] splits = splitKeys(regions, saltBuckets);
+        if( splits.length == 0 ){
+            admin.createTable(descriptor(tableName));
+        }else{
+            admin.createTable(descriptor(tableName), splits);
+        }
+        System.out.println("Table '" + tableName + "' created with " + regions + " regions"
+                + (saltBuckets > 0 ? ", salted row keys (-D" + User.SALT_BUCKETS + "=" + saltBuckets + ")" : ", names as row keys"));
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        // Establishing connection to HBase
+        Configuration conf = HBaseConfiguration.create();
+        conf.addResource(new Path("/etc/hbase/conf/hbase-site.xml"));
+        new GenericOptionsParser(conf, args);
+        int saltBuckets = conf.getInt(User.SALT_BUCKETS, 0);
+        User.setSaltBuckets(saltBuckets);
+        Connection connection = ConnectionFactory.createConnection(conf);
+
+        try {
+            Admin admin = connection.getAdmin();
+            try {
+                // By default one region per bucket, or per region server when rows are not salted
+                int regions = conf.getInt(REGIONS, saltBuckets > 0 ? saltBuckets : admin.getClusterStatus().getServersSize());
+                provision(admin, TableName.valueOf(conf.get(TABLE, "wauHTable")), Math.max(1, regions), saltBuckets);
+
+            // Close admin
+            }finally{
+                admin.close();
+            }
+
+        // Close connection
+        }finally{
+            connection.close();
+        }
+    }
+}
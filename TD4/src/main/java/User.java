@@ -3,14 +3,33 @@
  * Implements basic function to access information of user.
  * No insertion of new value is done through this class
  *
+ * Friends are stored in the family 'friends' :
+ * - either as one space separated list in the column 'others' (default layout)
+ * - or as one column per friend, named '_' + friend's name, with an empty value
+ *   (layout chosen with setFriendColumns(true), see FriendColumnsMigration)
+ * Friends are always read from both, so rows not migrated yet are still understood
+ * (a friend in both, on a row being migrated, is only counted once).
+ * With one column per friend, the row cache only keeps the family 'info', the bff and the list of a row
+ * (see rowGet()), so that reading or updating a user does not depend on its number of friends :
+ * the columns of friends are only read when all the friends are needed (readFriends()).
+ *
+ * Row keys are the lowercase names, or, when rows are salted (setSaltBuckets(n), see TableProvisioner),
+ * one salt byte (hash of the name modulo n) followed by the name, so that consecutive names are spread
+ * over n ranges of the table. Salting is transparent : a user is always looked up by its name (rowKey()),
+ * and the name of a row is given by nameOf(). Every client of a table must use the same number of buckets.
+ *
  * Created by willyau on 31/10/16.
  */
 
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.MurmurHash3;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
 
 public class User {
 
@@ -19,26 +38,102 @@ public class User {
     final protected byte[] familyFriends   = Bytes.toBytes("friends");
     final protected byte[] columnBff       = Bytes.toBytes("bff");
     final protected byte[] columnOthers    = Bytes.toBytes("others");
+    final protected byte[] friendPrefix    = Bytes.toBytes("_");
+    final protected byte[] emptyValue      = new byte[0];
     final protected String separator       = " " ;
     protected String name;
     protected Put put;
     protected Get get;
     protected Append append;
     protected Table table;
+    protected RowCache cache;
+
+    // Configuration key of the layout of friends, and layout used by every user
+    public static final String FRIEND_COLUMNS = "socialnetwork.friends.columns";
+    protected static boolean friendColumns = false;
+
+    // Configuration key of the number of salt buckets of row keys (0 : not salted), and number used by every user
+    public static final String SALT_BUCKETS = "socialnetwork.salt.buckets";
+    public static final int MAX_SALT_BUCKETS = 256;
+    protected static int saltBuckets = 0;
 
     // Constructor
     protected User(String name, Table table) {
         this.name       = name;
-        byte[] nameByte = bytify(name);
+        byte[] nameByte = rowKey(name);
         this.put        = new Put(nameByte);
         this.get        = new Get(nameByte);
         this.append     = new Append(nameByte);
         this.table      = table;
+        this.cache      = RowCache.getInstance();
+    }
+
+    // Use one column per friend instead of the list 'others'
+    public static void setFriendColumns(boolean columns) {
+        friendColumns = columns;
     }
 
+    // Salt row keys with one byte out of a number of buckets (0 to use the names as row keys)
+    public static void setSaltBuckets(int buckets) {
+        if( buckets < 0 || buckets > MAX_SALT_BUCKETS ){
+            throw new IllegalArgumentException("Number of salt buckets must be between 0 and " + MAX_SALT_BUCKETS + " : " + buckets);
+        }
+        saltBuckets = buckets;
+    }
+
+
+    // Row key of a user : its lowercase name, after its salt byte when rows are salted
+    // (the hash must never change, rows already written would no longer be found)
+    public static byte[] rowKey(String name) {
+        byte[] nameBytes = Bytes.toBytes(name.toLowerCase());
+        if( saltBuckets == 0 ) return nameBytes;
+        int salt = (MurmurHash3.getInstance().hash(nameBytes) & Integer.MAX_VALUE) % saltBuckets;
+        return Bytes.add(new byte[]{ (byte) salt }, nameBytes);
+    }
+
+    // Name of the user of a row key
+    public static String nameOf(byte[] row, int offset, int length) {
+        int salt = saltBuckets == 0 ? 0 : 1;
+        return Bytes.toString(row, offset + salt, length - salt);
+    }
+
+    public static String nameOf(byte[] row) {
+        return nameOf(row, 0, row.length);
+    }
+
+
     // Check existence of main user
     protected boolean exists() throws IOException {
-        return this.table.exists(get);
+        return ! this.readRow().isEmpty();
+    }
+
+
+    // Read user's row through the shared row cache
+    protected Result readRow() throws IOException {
+        return this.cache.get(this.table, rowGet(this.get.getRow()));
+    }
+
+
+    // Get of the columns of a row kept in the row cache : the whole row,
+    // or with one column per friend the family 'info', the bff and the list only
+    protected Get rowGet(byte[] row) {
+        Get rowGet = new Get(row);
+        if( friendColumns ){
+            rowGet.addFamily(familyInfo);
+            rowGet.addColumn(familyFriends, columnBff);
+            rowGet.addColumn(familyFriends, columnOthers);
+        }
+        return rowGet;
+    }
+
+
+    // User's row with all its friends : the cached row, or with one column per friend
+    // the family 'friends' read from HBase (the columns of friends are not kept in the cache)
+    protected Result readFriends() throws IOException {
+        if( friendColumns ){
+            return this.table.get(new Get(this.get.getRow()).addFamily(familyFriends));
+        }
+        return this.readRow();
     }
 
     // Change String to byte[]
@@ -47,12 +142,18 @@ public class User {
     }
 
 
+    // Name of the column of a friend
+    protected byte[] friendColumn(String friendName){
+        return Bytes.add(friendPrefix, bytify(friendName));
+    }
+
+
     // If value does not exist, return bytes of an empty string ''
     protected byte[] getByteValue(byte[] family, byte[] column) throws IOException {
-        Result row = this.table.get(this.get);
+        Result row = this.readRow();
         byte[] byteValue = bytify("");
         // If user exists in the database
-        if (this.exists() && row.containsColumn(family, column)) {
+        if (!row.isEmpty() && row.containsColumn(family, column)) {
                 byteValue = row.getValue(family, column);
         }
         return byteValue;
@@ -71,26 +172,53 @@ public class User {
 
     // Get the name of user's bff
     protected String getBffName() throws IOException {
-        Result row = this.table.get(this.get);
+        Result row = this.readRow();
         return getRowValue(row, familyFriends, columnBff);
     }
 
 
     // Get other's name
     protected ArrayList<String> getFriendsName() throws IOException {
-        Result row = this.table.get(this.get);
+        Result row = this.readFriends();
+        return getFriendsName(row);
+    }
+
+
+    // Get other's name from a row already read
+    protected ArrayList<String> getFriendsName(Result row){
         String friendNames = this.getRowValue(row, familyFriends, columnOthers);
         String[] friendArray = friendNames.split(separator);
         ArrayList<String> friendList = new ArrayList<String>();
         for( String friend : friendArray ){
             if( !friend.equals("") ) friendList.add(friend) ;
         }
+
+        // Columns of friends ('_' prefix) are sorted before the columns 'bff' and 'others'
+        // A friend already in the list (column added before the row was migrated) is not added again
+        NavigableMap<byte[], byte[]> columns = row.getFamilyMap(familyFriends);
+        if( columns != null ){
+            HashSet<String> listed = new HashSet<String>(friendList);
+            for( Map.Entry<byte[], byte[]> column : columns.tailMap(friendPrefix, true).entrySet() ){
+                byte[] qualifier = column.getKey();
+                if( ! Bytes.startsWith(qualifier, friendPrefix) ) break;
+                String friend = Bytes.toString(qualifier, friendPrefix.length, qualifier.length - friendPrefix.length);
+                if( ! listed.contains(friend) ) friendList.add(friend);
+            }
+        }
         return friendList;
     }
 
     
     // Verify user possess a specific friend
+    // With one column per friend, only the column of this friend (and the list of a row not migrated yet) is read
     protected boolean hasFriend(String someoneName) throws IOException {
+        if( friendColumns ){
+            Get getFriend = new Get(this.get.getRow());
+            getFriend.addColumn(familyFriends, friendColumn(someoneName));
+            getFriend.addColumn(familyFriends, columnOthers);
+            Result row = this.table.get(getFriend);
+            return row.containsColumn(familyFriends, friendColumn(someoneName)) || getFriendsName(row).contains(someoneName);
+        }
         ArrayList<String> friendsName = getFriendsName();
         if( friendsName.contains(someoneName) ){
             return true;
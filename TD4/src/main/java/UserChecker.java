@@ -15,6 +15,9 @@ import org.apache.hadoop.hbase.client.Table;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 
@@ -28,8 +31,7 @@ public class UserChecker extends User{
 
     // Is this friend also a row id ?
     private boolean isId(String friendName) throws IOException {
-        Get friendGet = new Get(this.bytify(friendName));
-        Result rowFriend = this.table.get(friendGet);
+        Result rowFriend = this.cache.get(this.table, rowGet(rowKey(friendName)));
         if( rowFriend.isEmpty() ){
             return false;
         }else{
@@ -87,6 +89,77 @@ public class UserChecker extends User{
     }
 
 
+    // Read of a friend's row for checkConsistency()
+    // With one column per friend, only its bff, its list and the column of user are read, whatever its number of friends
+    // (every row has a bff, so an existing row is never empty)
+    private Get getFriendRow(String friendName) {
+        Get getFriend = new Get(rowKey(friendName));
+        if( friendColumns ){
+            getFriend.addColumn(familyFriends, columnBff);
+            getFriend.addColumn(familyFriends, columnOthers);
+            getFriend.addColumn(familyFriends, friendColumn(this.name));
+        }else{
+            getFriend.addFamily(familyFriends);
+        }
+        return getFriend;
+    }
+
+
+    // Check every rule at once from one snapshot :
+    // - one read of user's row (served by the row cache if it is there)
+    // - one batched read of its bff and friends rows, restricted to the family 'friends' (or to a few columns, see getFriendRow)
+    // instead of one or two reads per check and per friend with the methods above.
+    public ConsistencyReport checkConsistency() throws IOException {
+        ConsistencyReport report = new ConsistencyReport(this.name);
+        Result row = this.readFriends();
+        if( row.isEmpty() ){
+            return report;
+        }
+        report.setExists(true);
+
+        String bffName = getRowValue(row, familyFriends, columnBff);
+        ArrayList<String> friendList = this.getFriendsName(row);
+
+        // Bff and friends rows, each name read once
+        TreeSet<String> names = new TreeSet<String>(friendList);
+        if( ! "".equals(bffName) ) names.add(bffName);
+        List<Get> gets = new ArrayList<Get>();
+        for(String friend : names){
+            gets.add(this.getFriendRow(friend));
+        }
+        Result[] friendRows = gets.isEmpty() ? new Result[0] : this.table.get(gets);
+        Map<String, Result> rows = new HashMap<String, Result>();
+        int i = 0;
+        for(String friend : names){
+            rows.put(friend, friendRows[i++]);
+        }
+
+        // Bff : exists, is a row id and has user as friend
+        if( "".equals(bffName) ){
+            report.setBff(false, false, false);
+        }else{
+            Result bffRow = rows.get(bffName);
+            report.setBff(true, ! bffRow.isEmpty(), this.getFriendsName(bffRow).contains(this.name));
+        }
+
+        // Other friends : are row ids and have user as friend
+        for(String friend : names){
+            if( ! friendList.contains(friend) ) continue;
+            Result friendRow = rows.get(friend);
+            if( friendRow.isEmpty() ){
+                report.addFriendWithoutId(friend);
+            }
+            if( ! this.getFriendsName(friendRow).contains(this.name) ){
+                report.addFriendWithoutUser(friend);
+            }
+        }
+
+        // If set's length equals list's length, we have unique friends
+        report.setUniqueFriends(friendList.size() == new TreeSet<String>(friendList).size());
+        return report;
+    }
+
+
     // Do user have unique friends ? (no redundancy)
     public boolean uniqueFriends() throws IOException {
         ArrayList<String> friendList = this.getFriendsName();
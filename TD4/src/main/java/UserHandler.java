@@ -5,6 +5,9 @@
  * - Creating a new user
  * - Updating an existing user
  * An instance of UserHandler will just need to add information and call insertIntoDatabase().
+ * With one column per friend, adding a friend is a blind put of its column (no read of the list).
+ * With a UserWriter, puts of user and friends are queued in its buffer instead of being sent one by one,
+ * and the rows of the friends are read in one batched get.
  *
  * Created by willyau on 26/10/16.
  */
@@ -15,6 +18,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -25,13 +29,28 @@ public class UserHandler extends User {
     private Set<String> listNewFriends;
     private String appendString;
     private boolean putOk;
+    private UserWriter writer;
 
     // Constructor
     public UserHandler(String name, Table table) {
+        this(name, table, null);
+    }
+
+    // Constructor with a write-behind buffer (null for synchronous puts)
+    public UserHandler(String name, Table table, UserWriter writer) {
         super(name, table);
         this.appendString = "";
         this.putOk      = false;
         this.listNewFriends = new TreeSet<String>();
+        this.writer     = writer;
+    }
+
+
+    // A row with a mutation still in the buffer is only read once the buffer is sent
+    @Override
+    protected Result readRow() throws IOException {
+        if( writer != null && writer.isPending(this.get.getRow()) ) writer.flush();
+        return super.readRow();
     }
 
 
@@ -67,6 +86,23 @@ public class UserHandler extends User {
     }
 
 
+    // Add the column of a friend, nothing is read : putting an existing column again changes nothing
+    private void insertFriendColumn(String friend) {
+        put.addColumn(familyFriends, friendColumn(friend), emptyValue);
+        putOk = true;
+    }
+
+
+    // Add a friend in the layout of friends in use
+    private void insertFriend(String friend) throws IOException {
+        if( friendColumns ){
+            insertFriendColumn(friend);
+        }else{
+            updateOtherFriends(bytify(friend));
+        }
+    }
+
+
     // Add information with a given name of column
     public UserHandler addInfo(String column, String info) throws IOException {
         if( info.length() > 0 ) insertValue(familyInfo, bytify(column), bytify(info));
@@ -81,7 +117,7 @@ public class UserHandler extends User {
             insertValue(familyFriends, columnBff, byteBff);
             if( ! nameOfBff.equals(this.name) ){
                 this.listNewFriends.add(nameOfBff);
-                updateOtherFriends(byteBff);
+                insertFriend(nameOfBff);
             }
         }
         return this;
@@ -92,16 +128,21 @@ public class UserHandler extends User {
     public UserHandler addFriend(String friend) throws IOException {
         // If friend is not user and is not already a friend, append it to the list of existing friends
         if( friend.length() > 0  && ! friend.equals(this.name) && ! listNewFriends.contains(friend) ){
-            updateOtherFriends(bytify(friend));
+            insertFriend(friend);
             this.listNewFriends.add(friend);
         }
         return this;
     }
 
 
-    // Realize the insertion into the database
+    // Realize the insertion into the database, the cached row is no longer up to date
     private void updateUserIntoDatabase() throws IOException {
-        if( putOk ) this.table.put(this.put);
+        if( putOk && writer != null ){
+            writer.mutate(this.put);
+        }else if( putOk ){
+            this.table.put(this.put);
+            this.cache.invalidate(this.table, this.put.getRow());
+        }
         appendString = "" ;
         putOk = false ;
     }
@@ -113,7 +154,7 @@ public class UserHandler extends User {
     private void updateFriendIntoDatabase(String friendName) throws IOException {
 
         if( friendName.length() > 0) {
-            UserHandler friend = new UserHandler(friendName, this.table);
+            UserHandler friend = new UserHandler(friendName, this.table, this.writer);
 
             // If friend exists, we add user's name to its list of other friends
             if( friend.exists() ){
@@ -130,8 +171,19 @@ public class UserHandler extends User {
 
 
     // Insert user then update friends' information in the database
+    // With a UserWriter, friends' rows are read in one batched get first, then their puts are queued
     public void updateIntoDatabase() throws IOException {
         this.updateUserIntoDatabase();
+        if( writer != null && ! listNewFriends.isEmpty() ){
+            List<byte[]> friendRows = new ArrayList<byte[]>();
+            List<Get> friendGets = new ArrayList<Get>();
+            for(String friend: listNewFriends){
+                friendRows.add(rowKey(friend));
+                friendGets.add(rowGet(rowKey(friend)));
+            }
+            writer.flushPending(friendRows);
+            this.cache.prefetch(this.table, friendGets);
+        }
         for(String friend: listNewFriends) this.updateFriendIntoDatabase(friend) ;
     }
 
@@ -0,0 +1,206 @@
+/**
+ * UserWriter : write-behind buffer of the mutations of UserHandler.
+ *
+ * Mutations are queued in a BufferedMutator and sent to HBase in batches :
+ * - when the buffer is larger than its size (hbase.client.write.buffer, 2 MB by default)
+ * - every flush period (1 s by default, 0 disables the periodic flush)
+ * - when flush() or close() is called
+ * mutate() does not wait for HBase : failed writes are reported later, from the thread that sent them,
+ * to the FailureListener (by default the failure is printed on the error output) and counted.
+ *
+ * Rows are only written once the buffer is sent, so a row with a pending mutation must not be read
+ * before : UserHandler sends the buffer before reading such a row, and rows written are invalidated in the
+ * RowCache when the buffer is sent.
+ * A row is marked pending once its mutation is queued, and is no longer pending only once a flush that
+ * started after it was queued has returned, so a row is never seen as written while its mutation is in flight.
+ */
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class UserWriter implements Closeable {
+
+    // Receives the writes that failed
+    public interface FailureListener {
+        void onFailure(Row mutation, Throwable cause);
+    }
+
+    // Attributes
+    public static final long DEFAULT_FLUSH_PERIOD_MS = 1000;
+
+    private final BufferedMutator mutator;
+    private final Table table;
+    private final RowCache cache;
+    private final FailureListener listener;
+    private final ScheduledExecutorService flusher;
+    private final TreeMap<byte[], Long> pendingRows;
+    private long mutations;
+    private long flushes;
+    private final AtomicLong failures;
+
+    // Constructor : the table is used to invalidate rows in the row cache, writeBufferSize 0 keeps the default size
+    public UserWriter(Connection connection, Table table, long writeBufferSize, long flushPeriodMs, FailureListener listener) throws IOException {
+        this.table       = table;
+        this.cache       = RowCache.getInstance();
+        this.listener    = listener != null ? listener : new FailureListener() {
+            public void onFailure(Row mutation, Throwable cause) {
+                System.err.println("Write of '" + User.nameOf(mutation.getRow()) + "' failed : " + cause);
+            }
+        };
+        this.pendingRows = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+        this.failures    = new AtomicLong();
+
+        BufferedMutatorParams params = new BufferedMutatorParams(table.getName());
+        if( writeBufferSize > 0 ) params.writeBufferSize(writeBufferSize);
+        params.listener(new BufferedMutator.ExceptionListener() {
+            public void onException(RetriesExhaustedWithDetailsException e, BufferedMutator mutator) {
+                reportFailures(e);
+            }
+        });
+        this.mutator = connection.getBufferedMutator(params);
+
+        // Periodic flush in a daemon thread, so that a forgotten writer does not keep the program alive
+        if( flushPeriodMs > 0 ){
+            this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "UserWriter flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.flusher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        flush();
+                    }catch( IOException e ){
+                        System.err.println("Periodic flush failed : " + e);
+                    }
+                }
+            }, flushPeriodMs, flushPeriodMs, TimeUnit.MILLISECONDS);
+        }else{
+            this.flusher = null;
+        }
+    }
+
+
+    // Name of the table written
+    public TableName getName() {
+        return mutator.getName();
+    }
+
+
+    // Queue a mutation, then mark its row pending with the number of the mutation, the row is no longer read from the cache
+    // (the mutator may block on a full buffer, so it is called without the lock : a flush started in between
+    // leaves the row pending, which only costs one more flush)
+    public void mutate(Mutation mutation) throws IOException {
+        mutator.mutate(mutation);
+        synchronized (this) {
+            pendingRows.put(mutation.getRow(), ++mutations);
+        }
+        cache.invalidate(table, mutation.getRow());
+    }
+
+
+    // Queue several mutations at once
+    public void mutate(List<? extends Mutation> mutationList) throws IOException {
+        for( Mutation mutation : mutationList ){
+            mutate(mutation);
+        }
+    }
+
+
+    // Has the row a mutation that may not be written yet ?
+    public synchronized boolean isPending(byte[] row) {
+        return pendingRows.containsKey(row);
+    }
+
+
+    // Flush the buffer if one of the rows has a pending mutation, so that the rows can be read
+    public void flushPending(Collection<byte[]> rows) throws IOException {
+        synchronized (this) {
+            boolean pending = false;
+            for( byte[] row : rows ){
+                if( pendingRows.containsKey(row) ) pending = true;
+            }
+            if( ! pending ) return;
+        }
+        flush();
+    }
+
+
+    // Send every queued mutation, then rows written are read again from HBase
+    // Only rows queued before the flush started are known to be written once it returns, later ones stay pending
+    public void flush() throws IOException {
+        long queued;
+        synchronized (this) {
+            queued = mutations;
+            flushes++;
+        }
+        mutator.flush();
+        List<byte[]> flushedRows = new ArrayList<byte[]>();
+        synchronized (this) {
+            Iterator<Map.Entry<byte[], Long>> rows = pendingRows.entrySet().iterator();
+            while( rows.hasNext() ){
+                Map.Entry<byte[], Long> row = rows.next();
+                if( row.getValue() <= queued ){
+                    flushedRows.add(row.getKey());
+                    rows.remove();
+                }
+            }
+        }
+        for( byte[] row : flushedRows ){
+            cache.invalidate(table, row);
+        }
+    }
+
+
+    // Report every failed mutation to the listener
+    // (called by the mutator from any thread mutating or flushing, it does not take the lock of the writer)
+    private void reportFailures(RetriesExhaustedWithDetailsException e) {
+        for( int i = 0; i < e.getNumExceptions(); i++ ){
+            listener.onFailure(e.getRow(i), e.getCause(i));
+        }
+        failures.addAndGet(e.getNumExceptions());
+    }
+
+
+    // Statistics
+    public synchronized long getMutations() {
+        return mutations;
+    }
+
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+
+    // Stop the periodic flush and send the last mutations
+    public void close() throws IOException {
+        if( flusher != null ) flusher.shutdown();
+        try {
+            flush();
+        }finally{
+            mutator.close();
+        }
+    }
+}